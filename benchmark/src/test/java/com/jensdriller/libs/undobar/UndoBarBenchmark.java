@@ -0,0 +1,362 @@
+package com.jensdriller.libs.undobar;
+
+import android.app.Activity;
+import android.os.Build;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+import android.widget.TextView;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+import org.robolectric.util.ActivityController;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Measures the main costs of the undo bar per {@link UndoBar.Style} on the JVM:
+ * <ul>
+ * <li>{@link UndoBar#getView(android.view.Window)} inflating and adding a new {@link UndoBarView}</li>
+ * <li>{@link UndoBar.Builder#create()}</li>
+ * <li>{@link UndoBar#show(boolean)} until its posted runnable has run, for both the bar and the Toast branch</li>
+ * <li>updating the message of a shown undo bar</li>
+ * <li>{@link UndoBar#hide(boolean)} of a shown undo bar</li>
+ * <li>a full cycle of showing and hiding again</li>
+ * <li>measuring and laying out the undo bar for different message lengths and max widths</li>
+ * </ul>
+ * Each is reported as mean time and allocated bytes per operation and written as JSON to
+ * {@code undobar-benchmark-<flavor>.json} in the directory given by the {@code undobar.benchmarkDir} property.
+ * <p/>
+ * It lives in the package of the library to reach its view creation, while its {@link Config} uses the
+ * {@code BuildConfig} of the benchmark module.
+ * <p/>
+ * Robolectric does not render, so the numbers track the work done by the library itself
+ * and are meant to compare library versions on the same machine, not to predict frame times on a device.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = com.jensdriller.libs.undobar.benchmark.BuildConfig.class, sdk = Build.VERSION_CODES.LOLLIPOP)
+public class UndoBarBenchmark {
+
+    private static final int WARM_UP_ITERATIONS = 50;
+    private static final int ITERATIONS = 200;
+
+    private static final UndoBar.Style[] STYLES = {UndoBar.Style.HOLO, UndoBar.Style.KITKAT, UndoBar.Style.LOLLIPOP};
+    private static final int[] MESSAGE_LENGTHS = {8, 40, 160};
+    private static final int[] MAX_WIDTHS_PX = {480, 900, 1920};
+    private static final String MESSAGE = "Item deleted.";
+    private static final String[] UPDATED_MESSAGES = {"2 items deleted.", "3 items deleted."};
+
+    private ActivityController<Activity> mController;
+    private Activity mActivity;
+    private FrameLayout mContainer;
+    private StringBuilder mResults;
+
+    @Before
+    public void setUp() {
+        mController = Robolectric.buildActivity(Activity.class).create().start().resume().visible();
+        mActivity = mController.get();
+        mContainer = new FrameLayout(mActivity);
+        mResults = new StringBuilder();
+    }
+
+    @After
+    public void tearDown() {
+        mController.pause().stop().destroy();
+    }
+
+    @Test
+    public void benchmark() throws IOException {
+        for (UndoBar.Style style : STYLES) {
+            benchmarkGetView(style);
+            benchmarkCreate(style);
+            benchmarkShow(style, true);
+            benchmarkShow(style, false);
+            benchmarkUpdateMessage(style);
+            benchmarkHide(style);
+            benchmarkShowHideCycle(style);
+            benchmarkMeasure(style);
+        }
+        publishResults();
+    }
+
+    /**
+     * Times {@link UndoBar#getView(android.view.Window)} including its posted runnables, which add the new view.
+     * The view of the previous iteration is removed beforehand, so every iteration inflates.
+     */
+    private void benchmarkGetView(UndoBar.Style style) {
+        final UndoBar undoBar = new UndoBar(mActivity, style);
+        ShadowLooper.runUiThreadTasks();
+        final ViewGroup contentView = (ViewGroup) mActivity.findViewById(android.R.id.content);
+        run("get_view", style, "", new Runnable() {
+            @Override
+            public void run() {
+                View undoBarView = contentView.findViewById(R.id.undoBar);
+                if (undoBarView != null) {
+                    contentView.removeView(undoBarView);
+                }
+            }
+        }, new Runnable() {
+            @Override
+            public void run() {
+                undoBar.getView(mActivity.getWindow());
+                ShadowLooper.runUiThreadTasks();
+            }
+        });
+        undoBar.release();
+    }
+
+    private void benchmarkCreate(final UndoBar.Style style) {
+        run("create", style, "", new Runnable() {
+            @Override
+            public void run() {
+                new UndoBar.Builder(mActivity).setMessage(MESSAGE).setStyle(style).create();
+            }
+        });
+    }
+
+    /**
+     * Times {@link UndoBar#show(boolean)} of a hidden undo bar including its posted runnable.
+     */
+    private void benchmarkShow(UndoBar.Style style, boolean buttonVisible) {
+        final UndoBar undoBar = createUndoBar(style, buttonVisible);
+        run("show", style, buttonVisible ? "" : "\"branch\": \"toast\", ", new Runnable() {
+            @Override
+            public void run() {
+                undoBar.hide(false);
+                ShadowLooper.runUiThreadTasks();
+            }
+        }, new Runnable() {
+            @Override
+            public void run() {
+                undoBar.show(false);
+                ShadowLooper.runUiThreadTasks();
+            }
+        });
+        undoBar.release();
+    }
+
+    /**
+     * Times showing a shown undo bar again with a new message, as done when another item is deleted.
+     */
+    private void benchmarkUpdateMessage(UndoBar.Style style) {
+        final UndoBar undoBar = createUndoBar(style, true);
+        undoBar.show(false);
+        ShadowLooper.runUiThreadTasks();
+        run("update_message", style, "", new Runnable() {
+            private int mIteration;
+
+            @Override
+            public void run() {
+                undoBar.setMessage(UPDATED_MESSAGES[mIteration++ % UPDATED_MESSAGES.length]);
+                undoBar.show(false);
+                ShadowLooper.runUiThreadTasks();
+            }
+        });
+        undoBar.release();
+    }
+
+    /**
+     * Times {@link UndoBar#hide(boolean)} of a shown undo bar including its posted runnables.
+     */
+    private void benchmarkHide(UndoBar.Style style) {
+        final UndoBar undoBar = createUndoBar(style, true);
+        run("hide", style, "", new Runnable() {
+            @Override
+            public void run() {
+                undoBar.show(false);
+                ShadowLooper.runUiThreadTasks();
+            }
+        }, new Runnable() {
+            @Override
+            public void run() {
+                undoBar.hide(false);
+                ShadowLooper.runUiThreadTasks();
+            }
+        });
+        undoBar.release();
+    }
+
+    /**
+     * Times showing an undo bar and hiding it again, all posted runnables included.
+     */
+    private void benchmarkShowHideCycle(UndoBar.Style style) {
+        final UndoBar undoBar = createUndoBar(style, true);
+        run("show_hide_cycle", style, "", new Runnable() {
+            @Override
+            public void run() {
+                undoBar.show(false);
+                ShadowLooper.runUiThreadTasks();
+                undoBar.hide(false);
+                ShadowLooper.runUiThreadTasks();
+            }
+        });
+        undoBar.release();
+    }
+
+    private UndoBar createUndoBar(UndoBar.Style style, boolean buttonVisible) {
+        return new UndoBar.Builder(mActivity)
+                .setMessage(MESSAGE)
+                .setStyle(style)
+                .setButtonVisible(buttonVisible)
+                .create();
+    }
+
+    private void benchmarkMeasure(UndoBar.Style style) {
+        final View undoBarView = LayoutInflater.from(mActivity).inflate(style.getLayoutResId(), mContainer, false);
+        final TextView message = (TextView) undoBarView.findViewById(R.id.message);
+        final int heightMeasureSpec = View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED);
+
+        for (int messageLength : MESSAGE_LENGTHS) {
+            char[] text = new char[messageLength];
+            Arrays.fill(text, 'x');
+            for (int i = 0; i < text.length; i += 6) {
+                text[i] = ' ';
+            }
+            message.setText(new String(text));
+
+            for (int maxWidth : MAX_WIDTHS_PX) {
+                final int widthMeasureSpec = View.MeasureSpec.makeMeasureSpec(maxWidth, View.MeasureSpec.AT_MOST);
+                run("measure", style, String.format(Locale.US, "\"message_length\": %d, \"max_width_px\": %d, ", messageLength, maxWidth),
+                        new Runnable() {
+                            @Override
+                            public void run() {
+                                message.requestLayout(); // defeats the measure cache, as a new message would
+                                undoBarView.measure(widthMeasureSpec, heightMeasureSpec);
+                                undoBarView.layout(0, 0, undoBarView.getMeasuredWidth(), undoBarView.getMeasuredHeight());
+                            }
+                        });
+            }
+        }
+    }
+
+    /**
+     * Runs the given operation {@link #WARM_UP_ITERATIONS} times, then measures it over {@link #ITERATIONS}.
+     */
+    private void run(String name, UndoBar.Style style, String parameters, Runnable operation) {
+        for (int i = 0; i < WARM_UP_ITERATIONS; i++) {
+            operation.run();
+        }
+        Measurement measurement = new Measurement();
+        measurement.resume();
+        for (int i = 0; i < ITERATIONS; i++) {
+            operation.run();
+        }
+        measurement.pause();
+        append(name, style, parameters, measurement);
+    }
+
+    /**
+     * Same as {@link #run(String, UndoBar.Style, String, Runnable)} but runs the given preparation
+     * before each iteration of the operation, outside of the measurement.
+     */
+    private void run(String name, UndoBar.Style style, String parameters, Runnable preparation, Runnable operation) {
+        Measurement measurement = new Measurement();
+        for (int i = 0; i < WARM_UP_ITERATIONS + ITERATIONS; i++) {
+            preparation.run();
+            if (i >= WARM_UP_ITERATIONS) {
+                measurement.resume();
+            }
+            operation.run();
+            if (i >= WARM_UP_ITERATIONS) {
+                measurement.pause();
+            }
+        }
+        append(name, style, parameters, measurement);
+    }
+
+    private void append(String name, UndoBar.Style style, String parameters, Measurement measurement) {
+        if (mResults.length() > 0) {
+            mResults.append(",\n");
+        }
+        mResults.append(String.format(Locale.US, "    {\"name\": \"%s\", \"style\": \"%s\", %s\"mean_ns\": %d, \"allocated_bytes_per_op\": %d}",
+                name, style.name(), parameters, measurement.mNanos / ITERATIONS,
+                measurement.mAllocatedBytes >= 0 ? measurement.mAllocatedBytes / ITERATIONS : -1));
+    }
+
+    private void publishResults() throws IOException {
+        String json = String.format(Locale.US, "{\n  \"flavor\": \"%s\",\n  \"sdk\": %d,\n  \"iterations\": %d,\n  \"results\": [\n%s\n  ]\n}\n",
+                com.jensdriller.libs.undobar.benchmark.BuildConfig.FLAVOR, Build.VERSION.SDK_INT, ITERATIONS, mResults);
+
+        File directory = new File(System.getProperty("undobar.benchmarkDir", "build/benchmark-results"));
+        //noinspection ResultOfMethodCallIgnored
+        directory.mkdirs();
+        Writer out = new OutputStreamWriter(new FileOutputStream(new File(directory, "undobar-benchmark-" + com.jensdriller.libs.undobar.benchmark.BuildConfig.FLAVOR + ".json")), "UTF-8");
+        try {
+            out.write(json);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Accumulates time and, where the JVM supports it, allocated bytes of the current thread.
+     */
+    private static class Measurement {
+
+        private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+        private static final Method GET_THREAD_ALLOCATED_BYTES = getThreadAllocatedBytesMethod();
+
+        private long mStartNanos;
+        private long mStartAllocatedBytes;
+        private long mNanos;
+        private long mAllocatedBytes;
+
+        void resume() {
+            mStartAllocatedBytes = getAllocatedBytes();
+            mStartNanos = System.nanoTime();
+        }
+
+        void pause() {
+            mNanos += System.nanoTime() - mStartNanos;
+            long allocatedBytes = getAllocatedBytes();
+            if (mAllocatedBytes >= 0 && allocatedBytes >= 0) {
+                mAllocatedBytes += allocatedBytes - mStartAllocatedBytes;
+            } else {
+                mAllocatedBytes = -1;
+            }
+        }
+
+        /**
+         * @return the bytes allocated by the current thread so far, or {@code -1} if the JVM cannot tell
+         */
+        private static long getAllocatedBytes() {
+            if (GET_THREAD_ALLOCATED_BYTES == null) {
+                return -1;
+            }
+            try {
+                return (Long) GET_THREAD_ALLOCATED_BYTES.invoke(THREAD_MX_BEAN, Thread.currentThread().getId());
+            } catch (Exception e) {
+                return -1;
+            }
+        }
+
+        /**
+         * {@code com.sun.management.ThreadMXBean} is HotSpot specific, so it is looked up reflectively.
+         */
+        private static Method getThreadAllocatedBytesMethod() {
+            try {
+                Method method = THREAD_MX_BEAN.getClass().getMethod("getThreadAllocatedBytes", long.class);
+                method.setAccessible(true);
+                return method;
+            } catch (Exception e) {
+                return null;
+            }
+        }
+    }
+}
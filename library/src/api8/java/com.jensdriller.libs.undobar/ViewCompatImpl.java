@@ -1,46 +1,145 @@
 package com.jensdriller.libs.undobar;
 
 
+import android.os.Build;
 import android.view.View;
+import android.view.animation.Interpolator;
 
 import com.nineoldandroids.animation.Animator;
 import com.nineoldandroids.animation.AnimatorListenerAdapter;
 import com.nineoldandroids.view.ViewHelper;
 import com.nineoldandroids.view.ViewPropertyAnimator;
 
+/**
+ * Uses the native property APIs where the device has them
+ * and falls back to nineoldandroids, which applies a transformation on every draw, on API 8-11 only.
+ */
 class ViewCompatImpl extends ViewCompat {
 
-    private final ViewPropertyAnimator mViewPropertyAnimator;
+    private final ViewCompat mDelegate;
 
     ViewCompatImpl(View view) {
         super(view);
-        mViewPropertyAnimator = ViewPropertyAnimator.animate(view);
+        // View#animate() is available from API 12 on
+        mDelegate = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB_MR1
+                ? new NativeViewCompat(view)
+                : new ProxyViewCompat(view);
     }
 
     @Override
     void setAlpha(float alpha) {
-        ViewHelper.setAlpha(mView, alpha);
+        mDelegate.setAlpha(alpha);
+    }
+
+    @Override
+    void setTranslationY(float translationY) {
+        mDelegate.setTranslationY(translationY);
     }
 
     @Override
     void animateIn(long duration) {
-        mViewPropertyAnimator.cancel();
-        mViewPropertyAnimator.alpha(1)//
-                .setDuration(duration)//
-                .setListener(null);
-    }
-
-    @Override
-    void animateOut(long duration, final AnimatorListener animatorListener) {
-        mViewPropertyAnimator.cancel();
-        mViewPropertyAnimator.alpha(0)//
-                .setDuration(duration)//
-                .setListener(new AnimatorListenerAdapter() {
-                    @Override
-                    public void onAnimationEnd(Animator animation) {
-                        animatorListener.onAnimationEnd();
-                    }
-                });
+        mDelegate.animateIn(duration);
+    }
+
+    @Override
+    void animateOut(long duration, AnimatorListener animatorListener) {
+        mDelegate.animateOut(duration, animatorListener);
+    }
+
+    @Override
+    void animateTranslationY(float translationY, long duration) {
+        mDelegate.animateTranslationY(translationY, duration);
+    }
+
+    @Override
+    void setPivotX(float pivotX) {
+        mDelegate.setPivotX(pivotX);
+    }
+
+    @Override
+    void setScaleX(float scaleX) {
+        mDelegate.setScaleX(scaleX);
+    }
+
+    @Override
+    void animateScaleX(float scaleX, long duration, Interpolator interpolator) {
+        mDelegate.animateScaleX(scaleX, duration, interpolator);
+    }
+
+    @Override
+    void cancel() {
+        mDelegate.cancel();
+    }
+
+    private static class ProxyViewCompat extends ViewCompat {
+
+        private final ViewPropertyAnimator mViewPropertyAnimator;
+
+        ProxyViewCompat(View view) {
+            super(view);
+            mViewPropertyAnimator = ViewPropertyAnimator.animate(view);
+        }
+
+        @Override
+        void setAlpha(float alpha) {
+            ViewHelper.setAlpha(mView, alpha);
+        }
+
+        @Override
+        void setTranslationY(float translationY) {
+            ViewHelper.setTranslationY(mView, translationY);
+        }
+
+        @Override
+        void animateIn(long duration) {
+            mViewPropertyAnimator.cancel();
+            mViewPropertyAnimator.alpha(1)//
+                    .setDuration(duration)//
+                    .setListener(null);
+        }
+
+        @Override
+        void animateOut(long duration, final AnimatorListener animatorListener) {
+            mViewPropertyAnimator.cancel();
+            mViewPropertyAnimator.alpha(0)//
+                    .setDuration(duration)//
+                    .setListener(new AnimatorListenerAdapter() {
+                        @Override
+                        public void onAnimationEnd(Animator animation) {
+                            animatorListener.onAnimationEnd();
+                        }
+                    });
+        }
+
+        @Override
+        void animateTranslationY(float translationY, long duration) {
+            mViewPropertyAnimator.translationY(translationY)//
+                    .setDuration(duration)//
+                    .setListener(null);
+        }
+
+        @Override
+        void setPivotX(float pivotX) {
+            ViewHelper.setPivotX(mView, pivotX);
+        }
+
+        @Override
+        void setScaleX(float scaleX) {
+            ViewHelper.setScaleX(mView, scaleX);
+        }
+
+        @Override
+        void animateScaleX(float scaleX, long duration, Interpolator interpolator) {
+            mViewPropertyAnimator.scaleX(scaleX)//
+                    .setDuration(duration)//
+                    .setInterpolator(interpolator)//
+                    .setListener(null);
+        }
+
+        @Override
+        void cancel() {
+            mViewPropertyAnimator.cancel();
+        }
     }
 
 }
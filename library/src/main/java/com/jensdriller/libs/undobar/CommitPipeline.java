@@ -0,0 +1,167 @@
+package com.jensdriller.libs.undobar;
+
+import android.annotation.TargetApi;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Parcelable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Commits the undo tokens of hidden undo bars in batches off the main thread.
+ * <p/>
+ * Tokens of undo bars hiding within the same batch window are collected and handed to the
+ * {@link Callback} in one go on the given {@link Executor}, so N deletions become one transaction.
+ * Tokens spilled by an {@link UndoTokenStore} are only read back on that {@link Executor}, too.
+ * Pending tokens are flushed right away when the app goes to the background (API 14+).
+ * <p/>
+ * Create a single instance per process, e.g. held by your {@link android.app.Application}.
+ *
+ * @see UndoBar#setCommitPipeline(CommitPipeline)
+ */
+@SuppressWarnings({"UnusedDeclaration", "WeakerAccess"})
+public class CommitPipeline {
+
+    /**
+     * Commits a batch of undo tokens.
+     */
+    public interface Callback {
+        /**
+         * Will be called on the pipeline's {@link Executor} with the tokens in the order their undo bars hid.
+         */
+        void onCommit(List<Parcelable> tokens);
+    }
+
+    /**
+     * Default time window in milliseconds in which hidden undo bars are batched together.
+     */
+    public static final int DEFAULT_BATCH_WINDOW = 500;
+
+    // all pipelines share one callback, so none of them is ever kept alive by the application context
+    private static final Map<CommitPipeline, Boolean> sPipelines = new WeakHashMap<CommitPipeline, Boolean>();
+    private static FlushOnBackground sFlushOnBackground;
+
+    private final Executor mExecutor;
+    private final int mBatchWindow;
+    private final Callback mCallback;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private List<TokenHandle> mBatch = new ArrayList<TokenHandle>();
+
+    private final Runnable mFlushRunnable = new Runnable() {
+
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    /**
+     * Creates a pipeline batching with the {@link #DEFAULT_BATCH_WINDOW}.
+     */
+    public CommitPipeline(Context context, Executor executor, Callback callback) {
+        this(context, executor, DEFAULT_BATCH_WINDOW, callback);
+    }
+
+    /**
+     * @param batchWindow in milliseconds, counted from the first token of a batch
+     */
+    public CommitPipeline(Context context, Executor executor, int batchWindow, Callback callback) {
+        mExecutor = executor;
+        mBatchWindow = batchWindow;
+        mCallback = callback;
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
+            FlushOnBackground.register(context, this);
+        }
+    }
+
+    /**
+     * Adds the token of a hidden undo bar to the current batch.<br>
+     * Must be called from the main thread.
+     */
+    void enqueue(TokenHandle token) {
+        mBatch.add(token);
+        if (mBatch.size() == 1) {
+            mHandler.postDelayed(mFlushRunnable, mBatchWindow);
+        }
+    }
+
+    /**
+     * Commits the current batch right away.<br>
+     * Must be called from the main thread.
+     */
+    public void flush() {
+        mHandler.removeCallbacks(mFlushRunnable);
+        if (mBatch.isEmpty()) {
+            return;
+        }
+
+        final List<TokenHandle> batch = mBatch;
+        mBatch = new ArrayList<TokenHandle>();
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                List<Parcelable> tokens = new ArrayList<Parcelable>(batch.size());
+                for (TokenHandle handle : batch) {
+                    Parcelable token = handle.get();
+                    if (token != null) {
+                        tokens.add(token);
+                    }
+                }
+                if (!tokens.isEmpty()) {
+                    mCallback.onCommit(tokens);
+                }
+            }
+        });
+    }
+
+    /**
+     * Flushes all pipelines once the app goes to the background.<br>
+     * Registered once per process and only referencing the pipelines weakly.
+     */
+    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+    private static class FlushOnBackground implements ComponentCallbacks2 {
+
+        static synchronized void register(Context context, CommitPipeline pipeline) {
+            sPipelines.put(pipeline, Boolean.TRUE);
+            if (sFlushOnBackground == null) {
+                sFlushOnBackground = new FlushOnBackground();
+                context.getApplicationContext().registerComponentCallbacks(sFlushOnBackground);
+            }
+        }
+
+        @Override
+        public void onTrimMemory(int level) {
+            if (level >= TRIM_MEMORY_UI_HIDDEN) {
+                flushAll();
+            }
+        }
+
+        @Override
+        public void onConfigurationChanged(Configuration newConfig) {
+        }
+
+        @Override
+        public void onLowMemory() {
+            flushAll();
+        }
+
+        private static void flushAll() {
+            List<CommitPipeline> pipelines;
+            synchronized (FlushOnBackground.class) {
+                pipelines = new ArrayList<CommitPipeline>(sPipelines.keySet());
+            }
+            for (CommitPipeline pipeline : pipelines) {
+                pipeline.flush();
+            }
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.jensdriller.libs.undobar;
+
+import android.annotation.TargetApi;
+import android.app.Activity;
+import android.app.Application;
+import android.os.Build;
+import android.os.Bundle;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Carries pending undo bars over a configuration change of their {@link Activity}.
+ * <p/>
+ * Instead of being released, a pending undo bar is kept here with its token, listeners and absolute deadline
+ * while its {@link Activity} is re-created. The new {@link Activity} finds the undo bar by its tag to replace
+ * the listeners, which usually reference the old one. If it never does, the undo bar still commits through them.
+ * Its view is inflated as soon as the new {@link Activity} is created and attached once it is started,
+ * so the undo bar shows up right away with the remaining time and without fading in again.
+ * <p/>
+ * Must only be used from the main thread.
+ */
+@TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+class ConfigurationRetainer implements Application.ActivityLifecycleCallbacks {
+
+    private static ConfigurationRetainer sInstance;
+
+    // keyed by task and Activity class, as the re-created Activity is created right after the old one is destroyed
+    private final Map<String, List<UndoBar>> mRetainedUndoBars = new HashMap<String, List<UndoBar>>();
+    private final Map<Activity, List<UndoBar>> mPrewarmedUndoBars = new HashMap<Activity, List<UndoBar>>();
+
+    private ConfigurationRetainer() {
+    }
+
+    /**
+     * Keeps the given {@link UndoBar} until the given {@link Activity} has been re-created.
+     */
+    static void retain(Activity activity, UndoBar undoBar) {
+        if (sInstance == null) {
+            sInstance = new ConfigurationRetainer();
+            activity.getApplication().registerActivityLifecycleCallbacks(sInstance);
+        }
+
+        String key = getKey(activity);
+        List<UndoBar> undoBars = sInstance.mRetainedUndoBars.get(key);
+        if (undoBars == null) {
+            undoBars = new ArrayList<UndoBar>();
+            sInstance.mRetainedUndoBars.put(key, undoBars);
+        }
+        undoBars.add(undoBar);
+    }
+
+    /**
+     * @return the retained {@link UndoBar} with the given tag which is carried over to the given {@link Activity}
+     */
+    static UndoBar find(Activity activity, String tag) {
+        if (sInstance == null) {
+            return null;
+        }
+
+        List<UndoBar> undoBars = sInstance.mPrewarmedUndoBars.get(activity);
+        if (undoBars == null) {
+            // not even created yet
+            undoBars = sInstance.mRetainedUndoBars.get(getKey(activity));
+        }
+        if (undoBars != null) {
+            for (UndoBar undoBar : undoBars) {
+                if (tag == null ? undoBar.mTag == null : tag.equals(undoBar.mTag)) {
+                    return undoBar;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Instances of the same {@link Activity} class in different tasks never take over each other's undo bars.
+     */
+    private static String getKey(Activity activity) {
+        return activity.getTaskId() + "/" + activity.getClass().getName();
+    }
+
+    /**
+     * Drops the given {@link UndoBar}, e.g. because it has been hidden in the meantime.
+     */
+    static void forget(UndoBar undoBar) {
+        if (sInstance != null) {
+            removeFrom(sInstance.mRetainedUndoBars, undoBar);
+            removeFrom(sInstance.mPrewarmedUndoBars, undoBar);
+        }
+    }
+
+    private static void removeFrom(Map<?, List<UndoBar>> undoBarsMap, UndoBar undoBar) {
+        for (List<UndoBar> undoBars : undoBarsMap.values()) {
+            undoBars.remove(undoBar);
+        }
+    }
+
+    @Override
+    public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+        if (savedInstanceState == null) {
+            return;
+        }
+
+        List<UndoBar> undoBars = mRetainedUndoBars.remove(getKey(activity));
+        if (undoBars != null && !undoBars.isEmpty()) {
+            for (UndoBar undoBar : undoBars) {
+                undoBar.prewarm(activity);
+            }
+            mPrewarmedUndoBars.put(activity, undoBars);
+        }
+    }
+
+    @Override
+    public void onActivityStarted(Activity activity) {
+        List<UndoBar> undoBars = mPrewarmedUndoBars.remove(activity);
+        if (undoBars != null) {
+            // the content view is set by now
+            for (UndoBar undoBar : undoBars) {
+                undoBar.reattach(activity);
+            }
+        }
+    }
+
+    @Override
+    public void onActivityDestroyed(Activity activity) {
+        List<UndoBar> undoBars = mPrewarmedUndoBars.remove(activity);
+        if (undoBars != null) {
+            // destroyed before it was ever started, so the undo bars cannot be shown anymore
+            for (UndoBar undoBar : undoBars) {
+                undoBar.release();
+            }
+        }
+    }
+
+    @Override
+    public void onActivityResumed(Activity activity) {
+    }
+
+    @Override
+    public void onActivityPaused(Activity activity) {
+    }
+
+    @Override
+    public void onActivityStopped(Activity activity) {
+    }
+
+    @Override
+    public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+    }
+}
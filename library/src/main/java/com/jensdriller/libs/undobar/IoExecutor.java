@@ -0,0 +1,32 @@
+package com.jensdriller.libs.undobar;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * The single background thread on which undo bars read and write their files, in order.<br>
+ * It is a daemon thread, so it never keeps the process alive, and it is shared, so it is never shut down.
+ */
+final class IoExecutor {
+
+    private static ExecutorService sExecutor;
+
+    private IoExecutor() {
+    }
+
+    static synchronized Executor get() {
+        if (sExecutor == null) {
+            sExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "UndoBar I/O");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sExecutor;
+    }
+}
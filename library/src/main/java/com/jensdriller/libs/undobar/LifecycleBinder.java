@@ -0,0 +1,99 @@
+package com.jensdriller.libs.undobar;
+
+import android.annotation.TargetApi;
+import android.app.Activity;
+import android.app.Application;
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.os.Build;
+import android.os.Bundle;
+
+/**
+ * Releases an {@link UndoBar} or {@link UndoBarStack} as soon as the {@link Activity} hosting it is destroyed,
+ * so that a pending undo bar can never keep a finished {@link Activity} alive.<br>
+ * A pending {@link UndoBar} is handed over to the {@link ConfigurationRetainer} instead
+ * if the {@link Activity} is only re-created due to a configuration change.
+ */
+@TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+class LifecycleBinder implements Application.ActivityLifecycleCallbacks {
+
+    private final Releasable mReleasable;
+    private final Activity mActivity;
+
+    private LifecycleBinder(Releasable releasable, Activity activity) {
+        mReleasable = releasable;
+        mActivity = activity;
+    }
+
+    /**
+     * Binds the given {@link Releasable} to the lifecycle of the {@link Activity} behind the given {@link Context}.
+     *
+     * @return the binder, or {@code null} if the {@link Context} does not belong to an {@link Activity}
+     */
+    static LifecycleBinder bind(Releasable releasable, Context context) {
+        Activity activity = findActivity(context);
+        if (activity == null) {
+            return null;
+        }
+
+        LifecycleBinder lifecycleBinder = new LifecycleBinder(releasable, activity);
+        activity.getApplication().registerActivityLifecycleCallbacks(lifecycleBinder);
+        return lifecycleBinder;
+    }
+
+    void unbind() {
+        mActivity.getApplication().unregisterActivityLifecycleCallbacks(this);
+    }
+
+    /**
+     * Walks up the {@link ContextWrapper} chain, e.g. of a {@link android.app.Dialog},
+     * to find the {@link Activity} the given {@link Context} belongs to.
+     */
+    static Activity findActivity(Context context) {
+        while (context instanceof ContextWrapper) {
+            if (context instanceof Activity) {
+                return (Activity) context;
+            }
+            context = ((ContextWrapper) context).getBaseContext();
+        }
+        return null;
+    }
+
+    @Override
+    public void onActivityDestroyed(Activity activity) {
+        if (activity != mActivity) {
+            return;
+        }
+
+        // a pending undo bar survives the re-creation of its Activity
+        if (activity.isChangingConfigurations() && mReleasable instanceof UndoBar
+                && ((UndoBar) mReleasable).retain(activity)) {
+            return;
+        }
+        mReleasable.release();
+    }
+
+    @Override
+    public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+    }
+
+    @Override
+    public void onActivityStarted(Activity activity) {
+    }
+
+    @Override
+    public void onActivityResumed(Activity activity) {
+    }
+
+    @Override
+    public void onActivityPaused(Activity activity) {
+    }
+
+    @Override
+    public void onActivityStopped(Activity activity) {
+    }
+
+    @Override
+    public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+    }
+}
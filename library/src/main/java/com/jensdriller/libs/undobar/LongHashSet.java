@@ -0,0 +1,111 @@
+package com.jensdriller.libs.undobar;
+
+/**
+ * A set of primitive {@code long} values using open addressing with linear probing,
+ * so that neither adding nor looking up a value allocates.
+ */
+class LongHashSet {
+
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] mValues;
+    private boolean[] mUsed;
+    private int mSize;
+
+    LongHashSet() {
+        this(MIN_CAPACITY / 2);
+    }
+
+    /**
+     * @param expectedSize the number of values to hold without resizing
+     */
+    LongHashSet(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        mValues = new long[capacity];
+        mUsed = new boolean[capacity];
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    boolean contains(long value) {
+        int mask = mValues.length - 1;
+        for (int i = hash(value) & mask; mUsed[i]; i = (i + 1) & mask) {
+            if (mValues[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return {@code true} if the value has been added, {@code false} if it was contained already
+     */
+    boolean add(long value) {
+        if ((mSize + 1) * 2 > mValues.length) {
+            resize(mValues.length * 2);
+        }
+
+        int mask = mValues.length - 1;
+        int i = hash(value) & mask;
+        while (mUsed[i]) {
+            if (mValues[i] == value) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        mValues[i] = value;
+        mUsed[i] = true;
+        mSize++;
+        return true;
+    }
+
+    /**
+     * @return {@code true} if the value has been removed, {@code false} if it was not contained
+     */
+    boolean remove(long value) {
+        int mask = mValues.length - 1;
+        int i = hash(value) & mask;
+        while (mUsed[i] && mValues[i] != value) {
+            i = (i + 1) & mask;
+        }
+        if (!mUsed[i]) {
+            return false;
+        }
+
+        // shift following values of the same probe sequence back instead of leaving a tombstone
+        int gap = i;
+        for (int j = (gap + 1) & mask; mUsed[j]; j = (j + 1) & mask) {
+            int home = hash(mValues[j]) & mask;
+            if (((j - home) & mask) >= ((j - gap) & mask)) {
+                mValues[gap] = mValues[j];
+                gap = j;
+            }
+        }
+        mUsed[gap] = false;
+        mSize--;
+        return true;
+    }
+
+    private void resize(int capacity) {
+        long[] values = mValues;
+        boolean[] used = mUsed;
+        mValues = new long[capacity];
+        mUsed = new boolean[capacity];
+        mSize = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (used[i]) {
+                add(values[i]);
+            }
+        }
+    }
+
+    private static int hash(long value) {
+        int h = (int) (value ^ (value >>> 32));
+        return h ^ (h >>> 16);
+    }
+}
@@ -49,4 +49,12 @@ class MaxWidthRelativeLayout extends RelativeLayout {
 		}
 		super.onMeasure(widthMeasureSpec, heightMeasureSpec);
 	}
+
+	/**
+	 * @return the width available to this layout for the given measure spec, clamped to its max width
+	 */
+	int getClampedWidth(int widthMeasureSpec) {
+		int width = MeasureSpec.getSize(widthMeasureSpec);
+		return mMaxWidth > 0 && mMaxWidth < width ? mMaxWidth : width;
+	}
 }
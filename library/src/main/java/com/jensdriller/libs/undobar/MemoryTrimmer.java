@@ -0,0 +1,74 @@
+package com.jensdriller.libs.undobar;
+
+import android.annotation.TargetApi;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.Build;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Evicts the views of idle undo bars and the cached snapshots when the system runs low on memory.<br>
+ * Undo bars are only weakly referenced, so being tracked never keeps them alive.
+ * <p/>
+ * Must only be used from the main thread.
+ */
+@TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+class MemoryTrimmer implements ComponentCallbacks2 {
+
+    private static MemoryTrimmer sInstance;
+
+    private final Map<UndoBar, Boolean> mIdleUndoBars = new WeakHashMap<UndoBar, Boolean>();
+
+    private MemoryTrimmer() {
+    }
+
+    /**
+     * Tracks the given idle {@link UndoBar} until it is shown or evicted again.
+     */
+    static void track(Context context, UndoBar undoBar) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
+            return;
+        }
+        if (sInstance == null) {
+            sInstance = new MemoryTrimmer();
+            context.getApplicationContext().registerComponentCallbacks(sInstance);
+        }
+        sInstance.mIdleUndoBars.put(undoBar, Boolean.TRUE);
+    }
+
+    static void untrack(UndoBar undoBar) {
+        if (sInstance != null) {
+            sInstance.mIdleUndoBars.remove(undoBar);
+        }
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            evictAll();
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        evictAll();
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+
+    private void evictAll() {
+        UndoBar[] idleUndoBars = mIdleUndoBars.keySet().toArray(new UndoBar[mIdleUndoBars.size()]);
+        for (UndoBar undoBar : idleUndoBars) {
+            if (undoBar != null) {
+                undoBar.evictView();
+            }
+        }
+        mIdleUndoBars.clear();
+        SnapshotCache.clear();
+    }
+}
@@ -0,0 +1,132 @@
+package com.jensdriller.libs.undobar;
+
+import android.graphics.Typeface;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Picks the largest of a set of text sizes at which a message fits into a given number of lines.
+ * <p/>
+ * The sizes are binary searched by laying out the message at each candidate size.
+ * Results are memoized per message, button label, typeface and width, so repeated messages
+ * are not measured again.
+ * <p/>
+ * Must only be used from the main thread.
+ */
+final class MessageFitter {
+
+    private static final int MAX_RESULTS = 16;
+
+    private final int[] mTextSizes; // ascending, in pixels
+    private final int mMaxLines;
+    private final TextPaint mPaint = new TextPaint();
+
+    // in access order, so the least recently used result is evicted first
+    private final Map<Key, Integer> mResults = new LinkedHashMap<Key, Integer>(MAX_RESULTS + 1, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Integer> eldest) {
+            return size() > MAX_RESULTS;
+        }
+    };
+
+    // reused for lookups, so cache hits do not allocate
+    private final Key mLookupKey = new Key();
+
+    MessageFitter(int[] textSizes, int maxLines) {
+        mTextSizes = textSizes;
+        mMaxLines = maxLines;
+    }
+
+    boolean matches(int[] textSizes, int maxLines) {
+        return mMaxLines == maxLines && Arrays.equals(mTextSizes, textSizes);
+    }
+
+    /**
+     * @return the memoized text size for the given message, or {@code 0} if it still has to be {@link #fit fitted}
+     */
+    int get(CharSequence message, CharSequence buttonLabel, Typeface typeface, int width) {
+        mLookupKey.set(message, buttonLabel, typeface, width);
+        Integer textSize = mResults.get(mLookupKey);
+        return textSize != null ? textSize : 0;
+    }
+
+    /**
+     * Measures the message at the given text sizes and memoizes the largest one at which it fits.
+     *
+     * @param paint        the paint of the message, defining everything but its text size
+     * @param messageWidth the width available to the message text itself
+     * @param width        the width of the undo bar, as passed to {@link #get}
+     */
+    int fit(CharSequence message, CharSequence buttonLabel, TextPaint paint, int messageWidth, int width) {
+        int textSize = mTextSizes[0];
+        if (messageWidth > 0) {
+            mPaint.set(paint);
+            int low = 0;
+            int high = mTextSizes.length - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (fits(message, mTextSizes[mid], messageWidth)) {
+                    textSize = mTextSizes[mid];
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+        }
+
+        Key key = new Key();
+        key.set(message, buttonLabel, paint.getTypeface(), width);
+        mResults.put(key, textSize);
+        return textSize;
+    }
+
+    private boolean fits(CharSequence message, int textSize, int messageWidth) {
+        mPaint.setTextSize(textSize);
+        StaticLayout layout = new StaticLayout(message, mPaint, messageWidth, Layout.Alignment.ALIGN_NORMAL, 1f, 0f, false);
+        return layout.getLineCount() <= mMaxLines;
+    }
+
+    private static final class Key {
+
+        private String mMessage;
+        private String mButtonLabel;
+        private Typeface mTypeface;
+        private int mWidth;
+
+        void set(CharSequence message, CharSequence buttonLabel, Typeface typeface, int width) {
+            mMessage = message != null ? message.toString() : null;
+            mButtonLabel = buttonLabel != null ? buttonLabel.toString() : null;
+            mTypeface = typeface;
+            mWidth = width;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return mWidth == key.mWidth
+                    && (mMessage == null ? key.mMessage == null : mMessage.equals(key.mMessage))
+                    && (mButtonLabel == null ? key.mButtonLabel == null : mButtonLabel.equals(key.mButtonLabel))
+                    && (mTypeface == null ? key.mTypeface == null : mTypeface.equals(key.mTypeface));
+        }
+
+        @Override
+        public int hashCode() {
+            int result = mMessage != null ? mMessage.hashCode() : 0;
+            result = 31 * result + (mButtonLabel != null ? mButtonLabel.hashCode() : 0);
+            result = 31 * result + (mTypeface != null ? mTypeface.hashCode() : 0);
+            result = 31 * result + mWidth;
+            return result;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.jensdriller.libs.undobar;
+
+import android.content.res.Resources;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Resolves message templates, i.e. string or plurals resources, and caches the most recently formatted messages.
+ * <p/>
+ * A plurals resource is formatted with its quantity as the only argument, e.g. {@code "%d items deleted."}.
+ * Repeated counts, as with rapid updates during bulk deletes, are then neither looked up nor formatted again.
+ * <p/>
+ * Must only be used from the main thread.
+ */
+final class MessageTemplates {
+
+    /**
+     * The quantity of a template which is a plain string resource.
+     */
+    static final int NO_QUANTITY = Integer.MIN_VALUE;
+
+    private static final int MAX_MESSAGES = 16;
+
+    // in access order, so the least recently used message is evicted first
+    private static final Map<Key, String> sMessages = new LinkedHashMap<Key, String>(MAX_MESSAGES + 1, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, String> eldest) {
+            return size() > MAX_MESSAGES;
+        }
+    };
+
+    // reused for lookups, so cache hits do not allocate
+    private static final Key sLookupKey = new Key();
+
+    private MessageTemplates() {
+    }
+
+    /**
+     * @param quantity the quantity of a plurals resource, or {@link #NO_QUANTITY} for a string resource
+     */
+    static String resolve(Resources resources, int resId, int quantity) {
+        Locale locale = resources.getConfiguration().locale;
+        sLookupKey.set(resId, quantity, locale);
+        String message = sMessages.get(sLookupKey);
+        if (message == null) {
+            message = quantity == NO_QUANTITY
+                    ? resources.getString(resId)
+                    : resources.getQuantityString(resId, quantity, quantity);
+            Key key = new Key();
+            key.set(resId, quantity, locale);
+            sMessages.put(key, message);
+        }
+        return message;
+    }
+
+    private static final class Key {
+
+        private int mResId;
+        private int mQuantity;
+        private Locale mLocale;
+
+        void set(int resId, int quantity, Locale locale) {
+            mResId = resId;
+            mQuantity = quantity;
+            mLocale = locale;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return mResId == key.mResId
+                    && mQuantity == key.mQuantity
+                    && (mLocale == null ? key.mLocale == null : mLocale.equals(key.mLocale));
+        }
+
+        @Override
+        public int hashCode() {
+            int result = mResId;
+            result = 31 * result + mQuantity;
+            result = 31 * result + (mLocale != null ? mLocale.hashCode() : 0);
+            return result;
+        }
+    }
+}
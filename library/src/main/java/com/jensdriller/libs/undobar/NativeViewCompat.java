@@ -0,0 +1,94 @@
+package com.jensdriller.libs.undobar;
+
+import android.animation.Animator;
+import android.animation.AnimatorListenerAdapter;
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.view.View;
+import android.view.ViewPropertyAnimator;
+import android.view.animation.Interpolator;
+
+/**
+ * Animates through the native property APIs of {@link View}.<br>
+ * Fades are rendered into a hardware layer where available, so each frame only composites it with a new alpha.
+ */
+@TargetApi(Build.VERSION_CODES.HONEYCOMB_MR1)
+class NativeViewCompat extends ViewCompat {
+
+    private final ViewPropertyAnimator mViewPropertyAnimator;
+
+    NativeViewCompat(View view) {
+        super(view);
+        mViewPropertyAnimator = view.animate();
+    }
+
+    @Override
+    void setAlpha(float alpha) {
+        mView.setAlpha(alpha);
+    }
+
+    @Override
+    void setTranslationY(float translationY) {
+        mView.setTranslationY(translationY);
+    }
+
+    @Override
+    void animateIn(long duration) {
+        mViewPropertyAnimator.cancel();
+        withLayer(mViewPropertyAnimator.alpha(1))//
+                .setDuration(duration)//
+                .setListener(null);
+    }
+
+    @Override
+    void animateOut(long duration, final AnimatorListener animatorListener) {
+        mViewPropertyAnimator.cancel();
+        withLayer(mViewPropertyAnimator.alpha(0))//
+                .setDuration(duration)//
+                .setListener(new AnimatorListenerAdapter() {
+                    @Override
+                    public void onAnimationEnd(Animator animation) {
+                        animatorListener.onAnimationEnd();
+                    }
+                });
+    }
+
+    @Override
+    void animateTranslationY(float translationY, long duration) {
+        mViewPropertyAnimator.translationY(translationY)//
+                .setDuration(duration)//
+                .setListener(null);
+    }
+
+    @Override
+    void setPivotX(float pivotX) {
+        mView.setPivotX(pivotX);
+    }
+
+    @Override
+    void setScaleX(float scaleX) {
+        mView.setScaleX(scaleX);
+    }
+
+    @Override
+    void animateScaleX(float scaleX, long duration, Interpolator interpolator) {
+        mViewPropertyAnimator.scaleX(scaleX)//
+                .setDuration(duration)//
+                .setInterpolator(interpolator)//
+                .setListener(null);
+    }
+
+    @Override
+    void cancel() {
+        mViewPropertyAnimator.cancel();
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static ViewPropertyAnimator withLayer(ViewPropertyAnimator viewPropertyAnimator) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            viewPropertyAnimator.withLayer();
+        }
+        return viewPropertyAnimator;
+    }
+
+}
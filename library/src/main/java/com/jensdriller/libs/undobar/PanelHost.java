@@ -0,0 +1,130 @@
+package com.jensdriller.libs.undobar;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.graphics.PixelFormat;
+import android.os.Build;
+import android.os.IBinder;
+import android.view.Gravity;
+import android.view.View;
+import android.view.Window;
+import android.view.WindowManager;
+import android.widget.FrameLayout;
+
+/**
+ * Hosts undo bars in a panel sub-window on top of a {@link Window}.<br>
+ * Showing and hiding an undo bar only relayouts this panel, never the content of the parent window.
+ * <p/>
+ * The panel only wraps its undo bars, so touches beside them still reach the parent window.
+ */
+class PanelHost extends FrameLayout {
+
+    private final Window mParentWindow;
+    private boolean mIsAdded;
+    private boolean mIsAttachPending;
+
+    private final Runnable mAttachRunnable = new Runnable() {
+
+        @Override
+        public void run() {
+            mIsAttachPending = false;
+            attach();
+        }
+    };
+
+    private PanelHost(Context context, Window parentWindow) {
+        super(context);
+        mParentWindow = parentWindow;
+    }
+
+    /**
+     * Returns the panel host of the given {@link Window}, creating it if needed.
+     */
+    static PanelHost get(Window window) {
+        View decorView = window.getDecorView();
+        PanelHost panelHost = (PanelHost) decorView.getTag(R.id.undoBarPanel);
+        if (panelHost == null) {
+            panelHost = new PanelHost(window.getContext(), window);
+            decorView.setTag(R.id.undoBarPanel, panelHost);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB_MR1) {
+                panelHost.detachWithParent(decorView);
+            }
+        }
+        return panelHost;
+    }
+
+    /**
+     * Adds the panel to the window manager.<br>
+     * If the parent window has no token yet, the attempt is deferred until it does.
+     */
+    void attach() {
+        if (mIsAdded) {
+            return;
+        }
+
+        View decorView = mParentWindow.getDecorView();
+        IBinder windowToken = decorView.getWindowToken();
+        if (windowToken == null) {
+            if (!mIsAttachPending) {
+                mIsAttachPending = true;
+                decorView.post(mAttachRunnable);
+            }
+            return;
+        }
+
+        WindowManager.LayoutParams layoutParams = new WindowManager.LayoutParams(
+                WindowManager.LayoutParams.WRAP_CONTENT,
+                WindowManager.LayoutParams.WRAP_CONTENT,
+                WindowManager.LayoutParams.TYPE_APPLICATION_PANEL,
+                WindowManager.LayoutParams.FLAG_NOT_FOCUSABLE | WindowManager.LayoutParams.FLAG_NOT_TOUCH_MODAL,
+                PixelFormat.TRANSLUCENT);
+        layoutParams.gravity = Gravity.BOTTOM | Gravity.CENTER_HORIZONTAL; // as the undo bars in the content view
+        layoutParams.token = windowToken;
+        mParentWindow.getWindowManager().addView(this, layoutParams);
+        mIsAdded = true;
+    }
+
+    /**
+     * Removes the panel from the window manager.
+     */
+    void detach() {
+        mParentWindow.getDecorView().removeCallbacks(mAttachRunnable);
+        mIsAttachPending = false;
+        if (mIsAdded) {
+            mIsAdded = false;
+            mParentWindow.getWindowManager().removeViewImmediate(this);
+        }
+    }
+
+    /**
+     * Removes the panel unless one of its undo bars is visible.<br>
+     * Below API 12, nothing removes the panel along with its parent window,
+     * so it must not stay attached while it is idle.
+     */
+    void detachIfIdle() {
+        for (int i = 0; i < getChildCount(); i++) {
+            if (getChildAt(i).getVisibility() == VISIBLE) {
+                return;
+            }
+        }
+        detach();
+    }
+
+    /**
+     * Removes the panel as soon as the parent window goes away to avoid leaking it.
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB_MR1)
+    private void detachWithParent(View decorView) {
+        decorView.addOnAttachStateChangeListener(new OnAttachStateChangeListener() {
+
+            @Override
+            public void onViewAttachedToWindow(View v) {
+            }
+
+            @Override
+            public void onViewDetachedFromWindow(View v) {
+                detach();
+            }
+        });
+    }
+}
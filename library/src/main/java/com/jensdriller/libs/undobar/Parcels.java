@@ -0,0 +1,42 @@
+package com.jensdriller.libs.undobar;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+/**
+ * Converts {@link Parcelable} undo tokens from and to raw bytes.
+ */
+class Parcels {
+
+    private Parcels() {
+    }
+
+    /**
+     * Flattens the given {@link Parcelable} into bytes.
+     *
+     * @throws RuntimeException if the {@link Parcelable} contains active objects like binders
+     */
+    static byte[] marshall(Parcelable parcelable) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcel.writeParcelable(parcelable, 0);
+            return parcel.marshall();
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    /**
+     * Re-creates a {@link Parcelable} from bytes produced by {@link #marshall(Parcelable)}.
+     */
+    static Parcelable unmarshall(byte[] bytes, ClassLoader classLoader) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcel.unmarshall(bytes, 0, bytes.length);
+            parcel.setDataPosition(0);
+            return parcel.readParcelable(classLoader);
+        } finally {
+            parcel.recycle();
+        }
+    }
+}
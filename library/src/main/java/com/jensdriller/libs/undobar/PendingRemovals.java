@@ -0,0 +1,297 @@
+package com.jensdriller.libs.undobar;
+
+import android.os.Parcelable;
+
+import java.util.Arrays;
+
+/**
+ * Hides removed rows of a list adapter until their undo bar disappears, without touching the backing data.
+ * <p/>
+ * Rows passed to {@link #remove(int[], UndoBar.Listener)} become pending. They are filtered from the
+ * adapter through {@link #getCount(int)} and {@link #getDataPosition(int)} and only removed from the
+ * backing data via {@link Adapter#removeData(int[])} once the undo bar disappears. Undoing brings them back.
+ * Both only emit item range notifications for the affected rows, never a full data set change.
+ * <p/>
+ * Ids of pending rows are held in a primitive set, and pending positions in a sorted array,
+ * so bulk removals stay cheap even on long lists.
+ * <p/>
+ * While rows are pending, the backing data must not be changed by other means.
+ * Must only be used from the main thread.
+ */
+@SuppressWarnings({"UnusedDeclaration", "WeakerAccess"})
+public class PendingRemovals {
+
+    /**
+     * The adapter whose rows are removed.<br>
+     * The notify methods match the ones of {@code RecyclerView.Adapter},
+     * so a subclass of it only has to implement the remaining ones.
+     */
+    public interface Adapter {
+        /**
+         * @return the stable id of the row at the given position of the backing data
+         */
+        long getDataItemId(int dataPosition);
+
+        /**
+         * Removes the rows at the given positions from the backing data for good.<br>
+         * The positions are sorted ascending.
+         */
+        void removeData(int[] dataPositions);
+
+        void notifyItemRangeInserted(int positionStart, int itemCount);
+
+        void notifyItemRangeRemoved(int positionStart, int itemCount);
+    }
+
+    private static final int[] EMPTY_POSITIONS = new int[0];
+    private static final long[] EMPTY_IDS = new long[0];
+
+    private final Adapter mAdapter;
+    private final LongHashSet mPendingIds = new LongHashSet();
+
+    // data positions of all pending rows, sorted ascending, and their ids
+    private int[] mPositions = EMPTY_POSITIONS;
+    private long[] mIds = EMPTY_IDS;
+    private int mSize;
+
+    // last lookup of getDataPosition(int), as rows are mostly bound in order
+    private int mLastPosition = -1;
+    private int mLastIndex;
+
+    public PendingRemovals(Adapter adapter) {
+        mAdapter = adapter;
+    }
+
+    /**
+     * @return the number of rows currently pending
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * @return whether the row with the given id is currently pending
+     */
+    public boolean isPending(long id) {
+        return mPendingIds.contains(id);
+    }
+
+    /**
+     * @return the number of rows to be shown by the adapter
+     */
+    public int getCount(int dataCount) {
+        return dataCount - mSize;
+    }
+
+    /**
+     * Maps a position of the adapter to the position of the row in the backing data, skipping pending rows.
+     */
+    public int getDataPosition(int position) {
+        int index;
+        if (mLastPosition >= 0 && Math.abs(position - mLastPosition) <= 1) {
+            index = mLastIndex;
+            while (index < mSize && mPositions[index] - index <= position) {
+                index++;
+            }
+            while (index > 0 && mPositions[index - 1] - (index - 1) > position) {
+                index--;
+            }
+        } else {
+            index = countSkipped(position);
+        }
+        mLastPosition = position;
+        mLastIndex = index;
+        return position + index;
+    }
+
+    /**
+     * Hides the rows at the given adapter positions until the returned listener is notified.
+     *
+     * @param positions adapter positions, as used by the adapter before the removal
+     * @param listener  notified after the rows have been committed or restored, e.g. to delete them from a database
+     * @return the listener to hand to the {@link UndoBar}
+     */
+    public UndoBar.Listener remove(int[] positions, UndoBar.Listener listener) {
+        int[] sorted = positions.clone();
+        Arrays.sort(sorted);
+        int count = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                sorted[count++] = sorted[i];
+            }
+        }
+
+        int[] dataPositions = new int[count];
+        long[] ids = new long[count];
+        for (int i = 0, index = 0; i < count; i++) {
+            while (index < mSize && mPositions[index] - index <= sorted[i]) {
+                index++;
+            }
+            dataPositions[i] = sorted[i] + index;
+            ids[i] = mAdapter.getDataItemId(dataPositions[i]);
+            mPendingIds.add(ids[i]);
+        }
+        merge(dataPositions, ids);
+
+        // from the bottom up, so the positions of the remaining ranges stay valid
+        int end = count;
+        for (int i = count - 1; i >= 0; i--) {
+            if (i == 0 || sorted[i - 1] != sorted[i] - 1) {
+                mAdapter.notifyItemRangeRemoved(sorted[i], end - i);
+                end = i;
+            }
+        }
+
+        return new Batch(ids, listener);
+    }
+
+    /**
+     * Shows the rows of the given batch again.
+     */
+    private void restore(long[] ids) {
+        int[] restored = extract(ids);
+
+        // top down, so each row is inserted at its final position
+        int start = -1;
+        int count = 0;
+        for (int i = 0, index = 0; i < restored.length; i++) {
+            while (index < mSize && mPositions[index] < restored[i]) {
+                index++;
+            }
+            int position = restored[i] - index;
+            if (count > 0 && position == start + count) {
+                count++;
+            } else {
+                if (count > 0) {
+                    mAdapter.notifyItemRangeInserted(start, count);
+                }
+                start = position;
+                count = 1;
+            }
+        }
+        if (count > 0) {
+            mAdapter.notifyItemRangeInserted(start, count);
+        }
+    }
+
+    /**
+     * Removes the rows of the given batch from the backing data.
+     */
+    private void commit(long[] ids) {
+        int[] committed = extract(ids);
+
+        // the rows are gone from the adapter already, only the remaining pending positions move up
+        for (int i = 0, index = 0; i < mSize; i++) {
+            while (index < committed.length && committed[index] < mPositions[i]) {
+                index++;
+            }
+            mPositions[i] -= index;
+        }
+        if (committed.length > 0) {
+            mAdapter.removeData(committed);
+        }
+    }
+
+    /**
+     * Counts the pending rows in front of the given adapter position.
+     */
+    private int countSkipped(int position) {
+        // mPositions[i] - i is non-decreasing, so the pending rows to skip form a prefix
+        int low = 0;
+        int high = mSize;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (mPositions[mid] - mid <= position) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Merges the given sorted data positions into the pending ones.
+     */
+    private void merge(int[] dataPositions, long[] ids) {
+        int[] positions = new int[mSize + dataPositions.length];
+        long[] allIds = new long[positions.length];
+        int i = 0, j = 0, k = 0;
+        while (i < mSize || j < dataPositions.length) {
+            if (j == dataPositions.length || (i < mSize && mPositions[i] < dataPositions[j])) {
+                positions[k] = mPositions[i];
+                allIds[k++] = mIds[i++];
+            } else {
+                positions[k] = dataPositions[j];
+                allIds[k++] = ids[j++];
+            }
+        }
+        mPositions = positions;
+        mIds = allIds;
+        mSize = k;
+        mLastPosition = -1;
+    }
+
+    /**
+     * Drops the rows with the given ids from the pending ones.
+     *
+     * @return their data positions, sorted ascending
+     */
+    private int[] extract(long[] ids) {
+        LongHashSet batch = new LongHashSet(ids.length);
+        for (long id : ids) {
+            if (mPendingIds.remove(id)) {
+                batch.add(id);
+            }
+        }
+
+        int[] extracted = new int[batch.size()];
+        int count = 0;
+        int size = 0;
+        for (int i = 0; i < mSize; i++) {
+            if (batch.contains(mIds[i])) {
+                extracted[count++] = mPositions[i];
+            } else {
+                mPositions[size] = mPositions[i];
+                mIds[size++] = mIds[i];
+            }
+        }
+        mSize = size;
+        mLastPosition = -1;
+        return extracted;
+    }
+
+    private class Batch implements UndoBar.Listener {
+
+        private final long[] mBatchIds;
+        private final UndoBar.Listener mListener;
+        private boolean mFinished;
+
+        Batch(long[] ids, UndoBar.Listener listener) {
+            mBatchIds = ids;
+            mListener = listener;
+        }
+
+        @Override
+        public void onHide() {
+            if (!mFinished) {
+                mFinished = true;
+                commit(mBatchIds);
+            }
+            if (mListener != null) {
+                mListener.onHide();
+            }
+        }
+
+        @Override
+        public void onUndo(Parcelable token) {
+            if (!mFinished) {
+                mFinished = true;
+                restore(mBatchIds);
+            }
+            if (mListener != null) {
+                mListener.onUndo(token);
+            }
+        }
+    }
+}
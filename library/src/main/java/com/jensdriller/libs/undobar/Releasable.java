@@ -0,0 +1,9 @@
+package com.jensdriller.libs.undobar;
+
+/**
+ * Something holding on to a window which has to be released together with its {@link android.app.Activity}.
+ */
+interface Releasable {
+
+    void release();
+}
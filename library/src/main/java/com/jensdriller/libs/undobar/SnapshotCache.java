@@ -0,0 +1,260 @@
+package com.jensdriller.libs.undobar;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+import android.graphics.drawable.Drawable;
+import android.view.View;
+import android.widget.TextView;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the snapshots of the most recently animated undo bars, so showing the same message again
+ * does not rasterize it again. Bitmaps of evicted snapshots are pooled and reused for new ones of the same size.
+ * <p/>
+ * The cache is shared by all windows and themes. Its {@link Key} therefore covers everything that is drawn,
+ * by resource ids and {@link Drawable.ConstantState}s rather than drawables or themes, so it keeps no
+ * {@link android.app.Activity} reachable. Snapshots of drawables without a constant state are not cached.
+ * <p/>
+ * Must only be used from the main thread.
+ */
+final class SnapshotCache {
+
+    private static final int MAX_SNAPSHOTS = 2;
+    private static final int MAX_POOLED_BITMAPS = 1;
+
+    // in access order, so the least recently used snapshot comes first
+    private static final Map<Key, Entry> sSnapshots = new LinkedHashMap<Key, Entry>(MAX_SNAPSHOTS + 1, 0.75f, true);
+    private static final List<Bitmap> sPool = new ArrayList<Bitmap>(MAX_POOLED_BITMAPS);
+
+    private SnapshotCache() {
+    }
+
+    /**
+     * @return the cached snapshot for the given key, which must be handed back via {@link #release(Key)}, or {@code null}
+     */
+    static Bitmap acquire(Key key) {
+        if (!key.mCacheable) {
+            return null;
+        }
+        Entry entry = sSnapshots.get(key);
+        if (entry == null) {
+            return null;
+        }
+        entry.mUsers++;
+        return entry.mBitmap;
+    }
+
+    /**
+     * Caches a new snapshot, which must be handed back via {@link #release(Key)}.
+     */
+    static void put(Key key, Bitmap bitmap) {
+        if (!key.mCacheable) {
+            return; // only drawn by the view which rasterized it
+        }
+        Entry entry = new Entry(bitmap);
+        entry.mUsers++;
+        sSnapshots.put(key, entry);
+
+        Iterator<Entry> entries = sSnapshots.values().iterator();
+        while (sSnapshots.size() > MAX_SNAPSHOTS && entries.hasNext()) {
+            Entry eldest = entries.next();
+            if (eldest.mUsers == 0) {
+                entries.remove();
+                recycle(eldest.mBitmap);
+            }
+        }
+    }
+
+    static void release(Key key) {
+        Entry entry = sSnapshots.get(key);
+        if (entry != null && entry.mUsers > 0) {
+            entry.mUsers--;
+        }
+    }
+
+    /**
+     * @return a pooled bitmap of the given size, or a new one
+     */
+    static Bitmap obtainBitmap(int width, int height) {
+        for (int i = sPool.size() - 1; i >= 0; i--) {
+            Bitmap bitmap = sPool.get(i);
+            if (bitmap.getWidth() == width && bitmap.getHeight() == height) {
+                sPool.remove(i);
+                bitmap.eraseColor(0);
+                return bitmap;
+            }
+        }
+        return Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+    }
+
+    /**
+     * Drops all snapshots which are not in use, e.g. when the system runs low on memory or an undo bar goes away.
+     */
+    static void clear() {
+        Iterator<Entry> entries = sSnapshots.values().iterator();
+        while (entries.hasNext()) {
+            if (entries.next().mUsers == 0) {
+                entries.remove();
+            }
+        }
+        sPool.clear();
+    }
+
+    private static void recycle(Bitmap bitmap) {
+        if (sPool.size() < MAX_POOLED_BITMAPS) {
+            sPool.add(bitmap);
+        }
+    }
+
+    private static final class Entry {
+
+        final Bitmap mBitmap;
+        int mUsers;
+
+        Entry(Bitmap bitmap) {
+            mBitmap = bitmap;
+        }
+    }
+
+    /**
+     * Everything an undo bar draws apart from its countdown line, including its theme and customizations.
+     */
+    static final class Key {
+
+        private final String mMessage;
+        private final String mButtonLabel;
+        private final Object mStyle;
+        private final int mThemeStyleResId;
+        private final int mWidth;
+        private final int mHeight;
+        private final int mMessageColor;
+        private final int mButtonColor;
+        private final float mTextSize;
+        private final Typeface mMessageTypeface;
+        private final Typeface mButtonTypeface;
+        private final Drawable.ConstantState mBackground;
+        private final boolean mHasBackgroundColor;
+        private final int mBackgroundColor;
+        private final Drawable.ConstantState mButtonBackground;
+        private final Drawable.ConstantState mButtonDrawable;
+        private final Rect mButtonDrawableBounds;
+        private final boolean mButtonVisible;
+        private final Drawable.ConstantState mDivider;
+        private final boolean mDividerVisible;
+        private boolean mCacheable = true;
+
+        Key(View view, TextView message, TextView button, View divider, UndoBarTheme theme,
+            boolean hasBackgroundColor, int backgroundColor) {
+            mMessage = String.valueOf(message.getText());
+            mButtonLabel = String.valueOf(button.getText());
+            mStyle = view.getTag();
+            mThemeStyleResId = theme != null ? theme.getStyleResId() : 0;
+            mWidth = view.getWidth();
+            mHeight = view.getHeight();
+            mMessageColor = message.getCurrentTextColor();
+            mButtonColor = button.getCurrentTextColor();
+            mTextSize = message.getTextSize();
+            mMessageTypeface = message.getTypeface();
+            mButtonTypeface = button.getTypeface();
+            mBackground = getLook(view.getBackground());
+            mHasBackgroundColor = hasBackgroundColor;
+            mBackgroundColor = backgroundColor;
+            mButtonBackground = getLook(button.getBackground());
+            Drawable buttonDrawable = button.getCompoundDrawables()[0];
+            mButtonDrawable = getLook(buttonDrawable);
+            // set by whoever provided the drawable
+            mButtonDrawableBounds = buttonDrawable != null ? buttonDrawable.copyBounds() : null;
+            mButtonVisible = button.getVisibility() == View.VISIBLE;
+            mDividerVisible = divider != null && divider.getVisibility() == View.VISIBLE;
+            mDivider = mDividerVisible ? getLook(divider.getBackground()) : null;
+        }
+
+        /**
+         * @return what the given drawable looks like, which is shared by all drawables loaded from the same resource
+         */
+        private Drawable.ConstantState getLook(Drawable drawable) {
+            if (drawable == null) {
+                return null;
+            }
+            Drawable.ConstantState state = drawable.getConstantState();
+            if (state == null) {
+                mCacheable = false; // the drawable itself would be the only key
+            }
+            return state;
+        }
+
+        int getWidth() {
+            return mWidth;
+        }
+
+        int getHeight() {
+            return mHeight;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return mWidth == key.mWidth
+                    && mHeight == key.mHeight
+                    && mMessageColor == key.mMessageColor
+                    && mButtonColor == key.mButtonColor
+                    && mTextSize == key.mTextSize
+                    && mHasBackgroundColor == key.mHasBackgroundColor
+                    && mBackgroundColor == key.mBackgroundColor
+                    && mButtonVisible == key.mButtonVisible
+                    && mDividerVisible == key.mDividerVisible
+                    && mThemeStyleResId == key.mThemeStyleResId
+                    && mBackground == key.mBackground
+                    && mButtonBackground == key.mButtonBackground
+                    && mButtonDrawable == key.mButtonDrawable
+                    && equal(mButtonDrawableBounds, key.mButtonDrawableBounds)
+                    && mDivider == key.mDivider
+                    && mMessage.equals(key.mMessage)
+                    && mButtonLabel.equals(key.mButtonLabel)
+                    && equal(mStyle, key.mStyle)
+                    && equal(mMessageTypeface, key.mMessageTypeface)
+                    && equal(mButtonTypeface, key.mButtonTypeface);
+        }
+
+        private static boolean equal(Object a, Object b) {
+            return a == null ? b == null : a.equals(b);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = mMessage.hashCode();
+            result = 31 * result + mButtonLabel.hashCode();
+            result = 31 * result + (mStyle != null ? mStyle.hashCode() : 0);
+            result = 31 * result + mThemeStyleResId;
+            result = 31 * result + mWidth;
+            result = 31 * result + mHeight;
+            result = 31 * result + mMessageColor;
+            result = 31 * result + mButtonColor;
+            result = 31 * result + Float.floatToIntBits(mTextSize);
+            result = 31 * result + (mMessageTypeface != null ? mMessageTypeface.hashCode() : 0);
+            result = 31 * result + (mButtonTypeface != null ? mButtonTypeface.hashCode() : 0);
+            result = 31 * result + System.identityHashCode(mBackground);
+            result = 31 * result + (mHasBackgroundColor ? 1 : 0);
+            result = 31 * result + mBackgroundColor;
+            result = 31 * result + System.identityHashCode(mButtonBackground);
+            result = 31 * result + System.identityHashCode(mButtonDrawable);
+            result = 31 * result + (mButtonDrawableBounds != null ? mButtonDrawableBounds.hashCode() : 0);
+            result = 31 * result + (mButtonVisible ? 1 : 0);
+            result = 31 * result + System.identityHashCode(mDivider);
+            result = 31 * result + (mDividerVisible ? 1 : 0);
+            return result;
+        }
+    }
+}
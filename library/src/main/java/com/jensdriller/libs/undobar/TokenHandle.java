@@ -0,0 +1,67 @@
+package com.jensdriller.libs.undobar;
+
+import android.os.Parcelable;
+
+/**
+ * The undo token of a hidden undo bar, as handed to its listeners and the {@link CommitPipeline}.
+ * <p/>
+ * A token spilled by an {@link UndoTokenStore} is only read back, and its file deleted,
+ * on the first call of {@link #get()}, on whichever thread actually needs it.
+ * A handle created by {@link #peek(UndoTokenStore, long, ClassLoader)} reads the token without claiming it.
+ */
+final class TokenHandle {
+
+    private UndoTokenStore mStore;
+    private long mId;
+    private ClassLoader mClassLoader;
+    private boolean mClaim;
+    private Parcelable mToken;
+
+    /**
+     * @return a handle to the given token, or {@code null} if there is none
+     */
+    static TokenHandle of(Parcelable token) {
+        return token != null ? new TokenHandle(token) : null;
+    }
+
+    private TokenHandle(Parcelable token) {
+        mToken = token;
+    }
+
+    /**
+     * Creates a handle to a spilled token, which is claimed from the given store once it is read.
+     */
+    TokenHandle(UndoTokenStore store, long id, ClassLoader classLoader) {
+        this(store, id, classLoader, true);
+    }
+
+    private TokenHandle(UndoTokenStore store, long id, ClassLoader classLoader, boolean claim) {
+        mStore = store;
+        mId = id;
+        mClassLoader = classLoader;
+        mClaim = claim;
+    }
+
+    /**
+     * @return a handle to a stored token, which stays in the given store once it is read,
+     * e.g. to persist the token of an undo bar which is still pending
+     */
+    static TokenHandle peek(UndoTokenStore store, long id, ClassLoader classLoader) {
+        return new TokenHandle(store, id, classLoader, false);
+    }
+
+    /**
+     * @return the token, or {@code null} if it could not be read back
+     */
+    synchronized Parcelable get() {
+        if (mStore != null) {
+            mToken = mStore.get(mId, mClassLoader);
+            if (mClaim) {
+                mStore.remove(mId);
+            }
+            mStore = null;
+            mClassLoader = null;
+        }
+        return mToken;
+    }
+}
@@ -11,6 +11,7 @@ import android.os.Build;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.Parcelable;
+import android.os.SystemClock;
 import android.util.TypedValue;
 import android.view.Gravity;
 import android.view.LayoutInflater;
@@ -18,12 +19,20 @@ import android.view.View;
 import android.view.View.OnClickListener;
 import android.view.ViewGroup;
 import android.view.Window;
+import android.widget.FrameLayout;
 import android.widget.RelativeLayout;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
 @SuppressWarnings({"UnusedDeclaration", "WeakerAccess"})
-public class UndoBar {
+public class UndoBar implements Releasable {
 
     public enum Style {
         /**
@@ -37,6 +46,8 @@ public class UndoBar {
          * <img src="https://camo.githubusercontent.com/3559ea695528c547ecdb918004b0c1df7ac83999/68747470733a2f2f7261772e6769746875622e636f6d2f6a656e7a7a2f416e64726f69642d556e646f4261722f6d61737465722f6173736574732f53637265656e73686f74312e706e67" />
          * <br>
          * <img src="https://camo.githubusercontent.com/22ac172d0a9e1273b87d9164a99c6a0933996164/68747470733a2f2f7261772e6769746875622e636f6d2f6a656e7a7a2f416e64726f69642d556e646f4261722f6d61737465722f6173736574732f53637265656e73686f74322e706e67" />
+         * <p/>
+         * The api21 flavor only ships the {@link #LOLLIPOP} style and uses it instead.
          */
         HOLO(R.layout.undo_bar_holo),
         /**
@@ -46,6 +57,8 @@ public class UndoBar {
          * <img src="https://camo.githubusercontent.com/bec5d8cf19564df3091cf5e2e77aff6760e88273/68747470733a2f2f7261772e6769746875622e636f6d2f6a656e7a7a2f416e64726f69642d556e646f4261722f6d61737465722f6173736574732f53637265656e73686f74332e706e67" />
          * <br>
          * <img src="https://camo.githubusercontent.com/107d8ed2fd880038b1d4a71dec9bbd1e02fd58e7/68747470733a2f2f7261772e6769746875622e636f6d2f6a656e7a7a2f416e64726f69642d556e646f4261722f6d61737465722f6173736574732f53637265656e73686f74342e706e67" />
+         * <p/>
+         * The api21 flavor only ships the {@link #LOLLIPOP} style and uses it instead.
          */
         KITKAT(R.layout.undo_bar_kitkat),
         /**
@@ -69,6 +82,19 @@ public class UndoBar {
         }
     }
 
+    public enum AttachMode {
+        /**
+         * The undo bar is added to the content view of the window.<br>
+         * This is the default.
+         */
+        CONTENT,
+        /**
+         * The undo bar is hosted in its own panel sub-window on top of the window.<br>
+         * Showing and hiding the undo bar never causes a layout pass over the window's content.
+         */
+        PANEL
+    }
+
     /**
      * Listener for actions of the undo bar.
      */
@@ -84,11 +110,134 @@ public class UndoBar {
         void onUndo(Parcelable token);
     }
 
+    /**
+     * Listener receiving an {@link Event} whenever the undo bar is hidden or undone.
+     */
+    public interface EventListener {
+        /**
+         * Will be fired when the undo bar disappears, either with or without being actioned.
+         */
+        void onEvent(Event event);
+    }
+
+    /**
+     * Immutable snapshot of an undo bar being hidden or undone.
+     */
+    public static final class Event {
+
+        public enum Reason {
+            /**
+             * The undo bar disappeared without being actioned.
+             */
+            HIDE,
+            /**
+             * The undo button was pressed.
+             */
+            UNDO
+        }
+
+        private final Reason mReason;
+        private final TokenHandle mToken;
+        private final long mShownAt;
+        private final long mTime;
+
+        Event(Reason reason, TokenHandle token, long shownAt, long time) {
+            mReason = reason;
+            mToken = token;
+            mShownAt = shownAt;
+            mTime = time;
+        }
+
+        public Reason getReason() {
+            return mReason;
+        }
+
+        /**
+         * A token spilled by an {@link UndoTokenStore} is read back from disk on the first call,
+         * so better call this off the main thread in that case, e.g. with {@link Dispatch#BACKGROUND}.
+         */
+        public Parcelable getToken() {
+            return mToken != null ? mToken.get() : null;
+        }
+
+        /**
+         * @return the {@link SystemClock#uptimeMillis()} at which the undo bar was shown
+         */
+        public long getShownAt() {
+            return mShownAt;
+        }
+
+        /**
+         * @return the {@link SystemClock#uptimeMillis()} at which the undo bar was hidden or undone
+         */
+        public long getTime() {
+            return mTime;
+        }
+    }
+
+    /**
+     * Defines how the {@link Listener UndoBar.Listener} and {@link EventListener} are called.
+     */
+    public enum Dispatch {
+        /**
+         * Called right away on the main thread, before the hide animation renders its first frame.<br>
+         * This is the default.
+         */
+        IMMEDIATE,
+        /**
+         * Called on the main thread once the hide animation has finished.
+         */
+        AFTER_ANIMATION,
+        /**
+         * Called on a shared background thread, in order.
+         */
+        BACKGROUND
+    }
+
+    /**
+     * Who is notified of an action and how, as set up on the undo bar which took it.
+     */
+    static final class Recipient {
+
+        final Listener mUndoListener;
+        final EventListener mEventListener;
+        final Executor mDispatchExecutor; // null to notify right away
+        final Executor mTokenExecutor;
+        final CommitPipeline mCommitPipeline;
+
+        Recipient(Listener undoListener, EventListener eventListener, Executor dispatchExecutor,
+                  Executor tokenExecutor, CommitPipeline commitPipeline) {
+            mUndoListener = undoListener;
+            mEventListener = eventListener;
+            mDispatchExecutor = dispatchExecutor;
+            mTokenExecutor = tokenExecutor;
+            mCommitPipeline = commitPipeline;
+        }
+    }
+
+    /**
+     * Creates the undo token on demand.
+     */
+    public interface TokenProvider {
+        /**
+         * Will be called only if the undo button is pressed.
+         */
+        Parcelable getUndoToken();
+    }
+
+    /**
+     * Sizes the message with the largest preset at which it fits into {@link #setMaxMessageLines(int) max lines}.
+     */
+    public static final int TEXT_SIZE_AUTO = -14;
     public static final int TEXT_SIZE_LARGE = -13;
     public static final int TEXT_SIZE_MEDIUM = -12;
     public static final int TEXT_SIZE_SMALL = -11;
     public static final int TEXT_SIZE_NOTSET = -10;
     public static final int DEFAULT_TEXT_SIZE = TEXT_SIZE_NOTSET;
+    /**
+     * Default number of lines a message is fitted into with {@link #TEXT_SIZE_AUTO}.
+     */
+    public static final int DEFAULT_MAX_MESSAGE_LINES = 2;
 
     /**
      * Default duration in milliseconds the undo bar will be displayed.
@@ -98,20 +247,35 @@ public class UndoBar {
      * Default duration in milliseconds of the undo bar show and hide animation.
      */
     public static final int DEFAULT_ANIMATION_DURATION = 300;
+    /**
+     * Default duration in milliseconds a hidden undo bar keeps its view before releasing it.
+     */
+    public static final int DEFAULT_IDLE_TIMEOUT = 30000;
 
     protected Context mContext;
+    protected Window mWindow;
     protected UndoBarView mView;
     protected ViewCompat mViewCompat;
+    protected PanelHost mPanelHost;
+    protected LifecycleBinder mLifecycleBinder;
     protected final Handler mHandler = new Handler(Looper.getMainLooper());
 
+    private Runnable mShowRunnable;
+
     private final Runnable mHideRunnable = new Runnable() {
 
         @Override
         public void run() {
+            if (mRetained) {
+                // hidden right after it is reattached, once the re-created Activity could replace its listeners
+                return;
+            }
             onHide();
         }
     };
 
+    private final Runnable mEvictRunnable = new EvictRunnable(this);
+
     @SuppressWarnings("FieldCanBeLocal")
     private final OnClickListener mOnUndoClickListener = new OnClickListener() {
 
@@ -121,27 +285,110 @@ public class UndoBar {
         }
     };
 
+    private final UndoBarView.OnSwipeListener mOnSwipeListener = new UndoBarView.OnSwipeListener() {
+
+        @Override
+        public void onSwipe() {
+            if (mHidePending) {
+                onSwipedAway();
+            }
+        }
+    };
+
+    private final Runnable mEndSnapshotRunnable = new Runnable() {
+
+        @Override
+        public void run() {
+            if (mView != null) {
+                mView.endSnapshot();
+            }
+        }
+    };
+
+    private static Executor sBackgroundExecutor;
+
+    // listeners are notified through a handler of their own, so release() never drops pending notifications
+    private final Handler mDispatchHandler = new Handler(Looper.getMainLooper());
+
+    // notifications held back until the running hide animation has ended, see Dispatch#AFTER_ANIMATION
+    private final List<Runnable> mAfterAnimation = new ArrayList<Runnable>();
+    private boolean mAnimatingOut;
+
+    private final Executor mAfterAnimationExecutor = new Executor() {
+
+        @Override
+        public void execute(final Runnable command) {
+            if (Looper.myLooper() != Looper.getMainLooper()) {
+                // e.g. from the executor of the TokenProvider
+                mDispatchHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        execute(command);
+                    }
+                });
+            } else if (mAnimatingOut) {
+                mAfterAnimation.add(command);
+            } else {
+                mDispatchHandler.post(command);
+            }
+        }
+    };
+
     protected boolean mButtonVisible;
+    protected boolean mHidePending;
+    protected boolean mWaiting;
+    protected long mShownAt;
+    protected long mHideAt;
+    protected int mRemainingDuration;
+    protected Object mScreenKey;
+    protected boolean mRetained;
+    protected UndoBarView mPrewarmedView;
+    protected UndoJournal mJournal;
+    protected long mJournalId;
+    protected UndoTokenStore mTokenStore;
+    protected long mStoredTokenId;
+    protected CommitPipeline mCommitPipeline;
+    protected UndoHistory mHistory;
+    private boolean mInHistory;
     protected Typeface mTypeface;
     protected Listener mUndoListener;
+    protected EventListener mEventListener;
+    protected Dispatch mDispatch = Dispatch.IMMEDIATE;
+    protected Executor mDispatchExecutor;
     protected Parcelable mUndoToken;
+    protected TokenProvider mTokenProvider;
+    protected Executor mTokenExecutor;
     protected CharSequence mUndoMessage;
+    protected int mMessageResId;
+    protected int mMessageQuantity = MessageTemplates.NO_QUANTITY;
     protected CharSequence mButtonLabel;
     protected Drawable mButtonDrawable;
     protected int mDuration = DEFAULT_DURATION;
     protected int mAnimationDuration = DEFAULT_ANIMATION_DURATION;
+    protected int mIdleTimeout = DEFAULT_IDLE_TIMEOUT;
     protected boolean mUseEnglishLocale;
     protected Style mStyle = Style.DEFAULT;
+    protected AttachMode mAttachMode = AttachMode.CONTENT;
     protected int mBkgColor = -1;
     protected int mUndoColor = Color.WHITE;
     protected boolean mAlignParentBottom;
+    protected boolean mCountdownVisible;
+    protected boolean mSwipeToDismiss;
+    protected boolean mSnapshotAnimations;
     protected int mBottomMargin;
-    protected int mTextSize;
+    protected int mTextSize = DEFAULT_TEXT_SIZE;
+    protected int mMaxMessageLines = DEFAULT_MAX_MESSAGE_LINES;
+    protected int[] mAutoFitTextSizes;
+    protected int mPriority;
+    protected String mTag;
+    private final UndoBarView.Appearance mAppearance = new UndoBarView.Appearance();
 
     protected boolean isBackgroundColorCustomized;
     protected boolean isButtonDrawableCustomized;
     protected boolean isButtonLabelCustomized;
     protected boolean isTypefaceCustomized;
+    protected boolean isPriorityCustomized;
+    protected boolean isUndoColorCustomized;
 
 
     public UndoBar(Context context){
@@ -218,21 +465,57 @@ public class UndoBar {
      * Lollipop style across all API levels.
      */
     public UndoBar(Window window, Style style) {
+        this(window, style, null);
+    }
+
+    /**
+     * Creates a new undo bar instance to be displayed in the given {@link Window}.
+     * <p/>
+     * The attach mode defines where the undo bar lives in the view hierarchy.<br>
+     * By default, it is added to the content view of the window.
+     *
+     * @see AttachMode
+     */
+    public UndoBar(Window window, Style style, AttachMode attachMode) {
         if (style == null) {
             style = Style.DEFAULT;
         }
+        if (attachMode == null) {
+            attachMode = AttachMode.CONTENT;
+        }
 
         mStyle = style;
+        mAttachMode = attachMode;
         if(window != null) {
             mContext = window.getContext();
-            mView = getView(window);
-            mView.setOnUndoClickListener(mOnUndoClickListener);
-            mViewCompat = new ViewCompatImpl(mView);
+            mWindow = window;
+            attachView();
 
             hide(false);
         }
     }
 
+    /**
+     * Obtains the {@link UndoBarView} of the window and wires it up with this undo bar.
+     */
+    private void attachView() {
+        mView = getView(mWindow);
+        mView.setOnUndoClickListener(mOnUndoClickListener);
+        mViewCompat = new ViewCompatImpl(mView);
+    }
+
+    /**
+     * Re-obtains the {@link UndoBarView} if it has been evicted in the meantime,
+     * either by this undo bar or by another one sharing the same view.
+     */
+    private void ensureView() {
+        if (mWindow != null && (mView == null || mView.getParent() == null)) {
+            attachView();
+            mViewCompat.setAlpha(0);
+            mView.setVisibility(View.GONE);
+        }
+    }
+
     /**
      * Sets the background color of the undo bar;
      */
@@ -246,13 +529,46 @@ public class UndoBar {
      */
     public void setMessage(CharSequence message) {
         mUndoMessage = message;
+        mMessageResId = 0;
     }
 
     /**
-     * Sets the message to be displayed on the left of the undo bar.
+     * Sets the message to be displayed on the left of the undo bar.<br>
+     * The string resource is only looked up once the undo bar is actually shown.
      */
     public void setMessage(int messageResId) {
-        mUndoMessage = mContext.getString(messageResId);
+        setMessageTemplate(messageResId, MessageTemplates.NO_QUANTITY);
+    }
+
+    /**
+     * Sets a message depending on a count, e.g. {@code "%d items deleted."}, to be displayed on the left of the undo bar.<br>
+     * The plurals resource is only resolved and formatted once the undo bar is actually shown,
+     * and recently formatted messages are cached, so updating the count on every deletion stays cheap.
+     *
+     * @param pluralsResId a plurals resource, formatted with the quantity as its only argument
+     */
+    public void setMessage(int pluralsResId, int quantity) {
+        setMessageTemplate(pluralsResId, quantity);
+    }
+
+    private void setMessageTemplate(int resId, int quantity) {
+        mUndoMessage = null;
+        mMessageResId = resId;
+        mMessageQuantity = quantity;
+    }
+
+    /**
+     * Resolves the message template, if any, right before the message is displayed.
+     */
+    private void resolveMessage() {
+        if (mMessageResId != 0) {
+            mUndoMessage = MessageTemplates.resolve(mContext.getResources(), mMessageResId, mMessageQuantity);
+        }
+    }
+
+    private void clearMessage() {
+        mUndoMessage = null;
+        mMessageResId = 0;
     }
 
     /**
@@ -310,12 +626,143 @@ public class UndoBar {
         mUndoListener = undoListener;
     }
 
+    /**
+     * Sets the {@link EventListener}.
+     */
+    public void setEventListener(EventListener eventListener) {
+        mEventListener = eventListener;
+    }
+
+    /**
+     * Sets how the {@link Listener UndoBar.Listener} and {@link EventListener} are called.<br>
+     * Default is {@link Dispatch#IMMEDIATE}.
+     */
+    public void setDispatch(Dispatch dispatch) {
+        mDispatch = dispatch != null ? dispatch : Dispatch.IMMEDIATE;
+        mDispatchExecutor = null;
+    }
+
+    /**
+     * Calls the {@link Listener UndoBar.Listener} and {@link EventListener} on the given {@link Executor}.
+     */
+    public void setDispatch(Executor executor) {
+        mDispatchExecutor = executor;
+    }
+
     /**
      * Sets a {@link Parcelable} token to the undo bar which will be returned in
      * the {@link Listener UndoBar.Listener}.
      */
     public void setUndoToken(Parcelable undoToken) {
         mUndoToken = undoToken;
+        mInHistory = false; // a new action, which is recorded on the next show()
+        if (mStoredTokenId != 0) {
+            // the stored token is stale now, and the new one is stored on the next show()
+            mTokenStore.remove(mStoredTokenId);
+            mStoredTokenId = 0;
+        }
+    }
+
+    /**
+     * Sets a {@link TokenProvider} which creates the undo token only if the undo button is pressed.<br>
+     * This takes precedence over {@link #setUndoToken(Parcelable)}.
+     */
+    public void setUndoTokenProvider(TokenProvider tokenProvider) {
+        setUndoTokenProvider(tokenProvider, null);
+    }
+
+    /**
+     * Sets a {@link TokenProvider} which creates the undo token only if the undo button is pressed.<br>
+     * This takes precedence over {@link #setUndoToken(Parcelable)}.
+     *
+     * @param executor runs the {@link TokenProvider}, e.g. off the main thread.
+     *                 The token is delivered to the {@link Listener UndoBar.Listener} on the main thread.
+     *                 If {@code null}, the {@link TokenProvider} is called right away.
+     */
+    public void setUndoTokenProvider(TokenProvider tokenProvider, Executor executor) {
+        mTokenProvider = tokenProvider;
+        mTokenExecutor = executor;
+        mInHistory = false;
+    }
+
+    /**
+     * Sets an {@link UndoTokenStore} which holds the undo token while this undo bar is pending.<br>
+     * Large tokens are then spilled to disk and only read back if the undo button is pressed.
+     */
+    public void setTokenStore(UndoTokenStore tokenStore) {
+        mTokenStore = tokenStore;
+    }
+
+    /**
+     * Sets a {@link CommitPipeline} which receives the undo token when this undo bar
+     * disappears without being actioned, to commit it in a batch off the main thread.
+     */
+    public void setCommitPipeline(CommitPipeline commitPipeline) {
+        mCommitPipeline = commitPipeline;
+    }
+
+    /**
+     * Sets an {@link UndoHistory} which keeps the actions of this undo bar undoable
+     * after it disappeared, until they are evicted from the history.
+     *
+     * @see #undo(int)
+     * @see #commitHistory()
+     */
+    public void setHistory(UndoHistory history) {
+        mHistory = history;
+    }
+
+    /**
+     * Sets an {@link UndoJournal} which keeps track of this undo bar while it is pending,
+     * so that it can be committed or shown again after process death.
+     */
+    public void setJournal(UndoJournal journal) {
+        mJournal = journal;
+    }
+
+    /**
+     * Coordinates this undo bar with all other undo bars with a priority on the same screen,
+     * i.e. the same {@link Activity} and its dialogs, so that only one of them is visible at a time.<br>
+     * An undo bar with a higher priority preempts the visible one, which is resumed afterwards
+     * with its remaining time. Otherwise, undo bars are shown one after another.
+     *
+     * @param priority higher values win
+     */
+    public void setPriority(int priority) {
+        isPriorityCustomized = true;
+        mPriority = priority;
+    }
+
+    /**
+     * Sets a tag by which this undo bar can be found again once its {@link Activity} has been re-created
+     * due to a configuration change.
+     *
+     * @see #findRetained(Activity, String)
+     */
+    public void setTag(String tag) {
+        mTag = tag;
+    }
+
+    public String getTag() {
+        return mTag;
+    }
+
+    /**
+     * Finds the pending undo bar with the given tag which has been carried over a configuration change
+     * to the given re-created {@link Activity} (API 14+).<br>
+     * It still notifies the listeners set up by the old {@link Activity}, so set them again on the returned undo bar.
+     * If it is never found, it hides and commits through those listeners once its time has run out.
+     * Call this from {@link Activity#onCreate(android.os.Bundle)} after {@code super.onCreate()}, i.e. before the undo bar
+     * is shown again and hides if its time has run out in the meantime.
+     *
+     * @return the undo bar, or {@code null} if there is none with the given tag
+     * @see #setTag(String)
+     */
+    public static UndoBar findRetained(Activity activity, String tag) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
+            return null;
+        }
+        return ConfigurationRetainer.find(activity, tag);
     }
 
     /**
@@ -338,6 +785,17 @@ public class UndoBar {
         mAnimationDuration = animationDuration;
     }
 
+    /**
+     * Sets the duration a hidden undo bar keeps its view before releasing it.<br>
+     * The view is re-created on the next {@link #show()}.<br>
+     * Default is {@link #DEFAULT_IDLE_TIMEOUT}. Pass {@code 0} to keep the view forever.
+     *
+     * @param idleTimeout in milliseconds
+     */
+    public void setIdleTimeout(int idleTimeout) {
+        mIdleTimeout = idleTimeout;
+    }
+
     /**
      * Forces the English {@link java.util.Locale Locale} to be used explicitly.<br>
      * This means that the undo bar label will always show <b>UNDO</b>
@@ -354,6 +812,7 @@ public class UndoBar {
      * style and ignored otherwise.
      */
     public void setUndoColor(int color) {
+        isUndoColorCustomized = true;
         mUndoColor = color;
     }
 
@@ -364,6 +823,7 @@ public class UndoBar {
      * style and ignored otherwise.
      */
     public void setUndoColorResId(int colorResId) {
+        isUndoColorCustomized = true;
         mUndoColor = mContext.getResources().getColor(colorResId);
     }
 
@@ -377,6 +837,38 @@ public class UndoBar {
         mAlignParentBottom = alignParentBottom;
     }
 
+    /**
+     * If set to {@code true}, a thin line along the bottom of the undo bar depletes until it disappears,
+     * so users see how much time is left to undo. It restarts with every {@link #show()}.<br>
+     * The default is {@code false}.<br>
+     * <b>Note:</b> This is only shown on API 12+ and ignored otherwise.
+     */
+    public void setCountdownVisible(boolean countdownVisible) {
+        mCountdownVisible = countdownVisible;
+    }
+
+    /**
+     * If set to {@code true}, the undo bar can be swiped away horizontally.
+     * It then disappears right away, just as if its duration had elapsed.<br>
+     * The default is {@code false}.<br>
+     * <b>Note:</b> This is only supported on API 12+ and ignored otherwise.
+     * While enabled, the undo bar consumes all touches on it.
+     */
+    public void setSwipeToDismiss(boolean swipeToDismiss) {
+        mSwipeToDismiss = swipeToDismiss;
+    }
+
+    /**
+     * If set to {@code true}, the undo bar is rasterized into a bitmap once when it animates in or out,
+     * and only that bitmap is drawn while the animation runs. Afterwards, its views are drawn again.<br>
+     * Snapshots are cached per message, size and look, so showing the same message again reuses them.
+     * This mainly helps with software rendering and the nineoldandroids animations below API 12.<br>
+     * The default is {@code false}.
+     */
+    public void setSnapshotAnimations(boolean snapshotAnimations) {
+        mSnapshotAnimations = snapshotAnimations;
+    }
+
     /**
      * if this is set, it adds margin from bottom.
      * only works if style except {@link UndoBar.Style#LOLLIPOP}
@@ -388,12 +880,36 @@ public class UndoBar {
 
     /**
      * setting Text Size in pixel, only numbers greater than 0 are allowed;
+     * or one of the TEXT_SIZE_* presets, {@link #TEXT_SIZE_AUTO} fitting the message into {@link #setMaxMessageLines(int) max lines}
      * @param textSize
      */
     public void setTextSize(int textSize){
         mTextSize = textSize;
     }
 
+    /**
+     * Sets the number of lines the message is fitted into with {@link #TEXT_SIZE_AUTO}.<br>
+     * Default is {@link #DEFAULT_MAX_MESSAGE_LINES}.
+     */
+    public void setMaxMessageLines(int maxMessageLines) {
+        mMaxMessageLines = maxMessageLines;
+    }
+
+    /**
+     * @return the preset text sizes in pixels, ascending
+     */
+    private int[] getAutoFitTextSizes() {
+        if (mAutoFitTextSizes == null) {
+            mAutoFitTextSizes = new int[]{
+                    (int) mContext.getResources().getDimension(R.dimen.undo_bar_text_size_small),
+                    (int) mContext.getResources().getDimension(R.dimen.undo_bar_text_size_normal),
+                    (int) mContext.getResources().getDimension(R.dimen.undo_bar_text_size_medium),
+                    (int) mContext.getResources().getDimension(R.dimen.undo_bar_text_size_large)
+            };
+        }
+        return mAutoFitTextSizes;
+    }
+
     private void setButtonLabelCustomized(boolean isCustomized) {
         isButtonLabelCustomized = isCustomized;
     }
@@ -410,6 +926,14 @@ public class UndoBar {
         isTypefaceCustomized = isCustomized;
     }
 
+    private void setPriorityCustomized(boolean isCustomized) {
+        isPriorityCustomized = isCustomized;
+    }
+
+    private void setUndoColorCustomized(boolean isCustomized) {
+        isUndoColorCustomized = isCustomized;
+    }
+
     /**
      * Calls {@link #show(boolean)} with {@code shouldAnimate = true}.
      */
@@ -423,68 +947,111 @@ public class UndoBar {
      * @param shouldAnimate whether the {@link UndoBar} should animate in
      */
     public void show(final boolean shouldAnimate) {
-        mHandler.post(new Runnable(){
+        mHidePending = true;
+        mHideAt = 0;
+        mRemainingDuration = 0;
+        bindLifecycle();
+        mHandler.removeCallbacks(mEvictRunnable);
+        MemoryTrimmer.untrack(this);
+
+        if (isPriorityCustomized && mWindow != null) {
+            if (mScreenKey == null) {
+                Activity activity = LifecycleBinder.findActivity(mContext);
+                mScreenKey = activity != null ? activity : mWindow;
+            }
+            mWaiting = !UndoBarManager.requestShow(this, mScreenKey);
+            if (mWaiting) {
+                return; // resumed once the screen is free
+            }
+        }
+        showNow(shouldAnimate);
+    }
+
+    /**
+     * Takes this undo bar off the screen in favor of one with a higher priority, preserving its remaining time.
+     */
+    void pause() {
+        mWaiting = true;
+        mHandler.removeCallbacks(mShowRunnable);
+        mHandler.removeCallbacks(mHideRunnable);
+        if (mHideAt > 0) {
+            mRemainingDuration = (int) Math.max(1, mHideAt - SystemClock.uptimeMillis());
+            // a process restored while this undo bar waits gets the time that was left when it was taken off the screen
+            recordInJournal(mRemainingDuration);
+        }
+        if (mViewCompat != null) {
+            mViewCompat.setAlpha(0);
+        }
+        if (mView != null) {
+            mView.setVisibility(View.GONE);
+        }
+    }
+
+    /**
+     * Shows this undo bar again after it waited for the screen.
+     */
+    void resume() {
+        mWaiting = false;
+        if (mRemainingDuration > 0) {
+            // the deadline recorded when paused has passed on while waiting
+            recordInJournal(mRemainingDuration);
+        }
+        showNow(true);
+    }
+
+    private void showNow(final boolean shouldAnimate) {
+        mHandler.removeCallbacks(mShowRunnable);
+        mShowRunnable = new Runnable(){
             @Override
             public void run() {
+                resolveMessage();
+                ensureView();
                 if(mView == null){
                     mButtonVisible = false;
                 }
                 if(mButtonVisible) {
-                    if (isBackgroundColorCustomized) {
-                        Drawable coloredBackground = mView.getBackground();
-                        coloredBackground.setColorFilter(mBkgColor, PorterDuff.Mode.SRC_IN);
-                        mView.setBackgroundDrawable(coloredBackground);
-                    }
-
-                    if (isTypefaceCustomized) {
-                        mView.setTypeface(mTypeface);
-                    }
-
-                    if(mTextSize > 0){
-                        //set textsize in pixel
-                        mView.setTextSize(mTextSize);
-                    }else{
-                        //set textsize in preset;
-                        switch(mTextSize){
-                            case TEXT_SIZE_LARGE:
-                                mView.setTextSize((int)mContext.getResources().getDimension(R.dimen.undo_bar_text_size_large));
-                                break;
-                            case TEXT_SIZE_MEDIUM:
-                                mView.setTextSize((int)mContext.getResources().getDimension(R.dimen.undo_bar_text_size_medium));
-                                break;
-                            case TEXT_SIZE_SMALL:
-                                mView.setTextSize((int)mContext.getResources().getDimension(R.dimen.undo_bar_text_size_small));
-                                break;
-                            default:
-                            case TEXT_SIZE_NOTSET:
-                                mView.setTextSize((int)mContext.getResources().getDimension(R.dimen.undo_bar_text_size_normal));
-                                break;
-                        }
-                    }
+                    // the view is shared by all undo bars of the window
+                    mView.setOnUndoClickListener(mOnUndoClickListener);
+                    mView.setOnSwipeListener(mSwipeToDismiss ? mOnSwipeListener : null);
+
+                    // before the text size, which then only applies to the button in auto mode
+                    mView.setAutoFit(mTextSize == TEXT_SIZE_AUTO ? getAutoFitTextSizes() : null, mMaxMessageLines);
+
+                    // the view only applies what differs from the undo bar it showed before
+                    UndoBarTheme theme = UndoBarTheme.obtain(mContext);
+                    boolean lollipopStyle = isLollipopStyle(mStyle);
+                    UndoBarView.Appearance appearance = mAppearance;
+                    appearance.mTypeface = isTypefaceCustomized ? mTypeface : null;
+                    appearance.mHasBackgroundColor = isBackgroundColorCustomized;
+                    appearance.mBackgroundColor = mBkgColor;
+                    appearance.mTextSize = mTextSize;
+                    appearance.mButtonLabel = isButtonLabelCustomized ? mButtonLabel : null;
+                    appearance.mButtonLabelResId = mUseEnglishLocale ? R.string.undo_english : R.string.undo;
+                    appearance.mHasUndoColor = lollipopStyle && (isUndoColorCustomized || !theme.hasUndoColor());
+                    appearance.mUndoColor = mUndoColor;
+                    appearance.mButtonDrawable = !lollipopStyle && isButtonDrawableCustomized ? mButtonDrawable : null;
+                    mView.applyAppearance(theme, appearance);
 
                     mView.setMessage(mUndoMessage);
 
-                    if (isButtonLabelCustomized) {
-                        mView.setButtonLabel(mButtonLabel);
-                    } else {
-                        mView.setButtonLabel(mUseEnglishLocale ? R.string.undo_english : R.string.undo);
-                    }
-
-                    if (isLollipopStyle(mStyle)) {
-                        mView.setUndoColor(mUndoColor);
+                    if (lollipopStyle) {
                         if (mAlignParentBottom && isAlignBottomPossible()) {
                             removeMargins(mView);
                         }
                     } else {
-                        if (isButtonDrawableCustomized) {
-                            mView.setButtonDrawable(mButtonDrawable);
-                        }
                         setBottomMargins(mView, mBottomMargin);
                     }
 
-                    mHandler.removeCallbacks(mHideRunnable);
-                    mHandler.postDelayed(mHideRunnable, mDuration);
+                    scheduleHide();
+                    if (mCountdownVisible) {
+                        mView.startCountdown(mHideAt - SystemClock.uptimeMillis(), mDuration);
+                    } else {
+                        mView.stopCountdown(); // the view might come from an undo bar with a countdown
+                    }
 
+                    if (mPanelHost != null) {
+                        mPanelHost.attach();
+                    }
                     mView.setVisibility(View.VISIBLE);
                     if (shouldAnimate) {
                         animateIn();
@@ -556,19 +1123,20 @@ public class UndoBar {
                     toast.show();
 
                     ///for compatibility measures;
-                    mHandler.removeCallbacks(mHideRunnable);
-                    mHandler.postDelayed(mHideRunnable, mDuration);
+                    scheduleHide();
                 }
             }
-        });
+        };
+        mHandler.post(mShowRunnable);
     }
 
     /**
      * Checks whether the given style is {@link Style#LOLLIPOP}.
-     * Either explicitly set or the system default.
+     * Either explicitly set, the system default or the only style of the api21 flavor.
      */
     private boolean isLollipopStyle(Style style) {
-        return style == Style.LOLLIPOP || (style == Style.DEFAULT && Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP);
+        return BuildConfig.LOLLIPOP_STYLE_ONLY || style == Style.LOLLIPOP
+                || (style == Style.DEFAULT && Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP);
     }
 
     /**
@@ -576,67 +1144,465 @@ public class UndoBar {
      * Either explicitly set or the system default.
      */
     private boolean isHoloStyle(Style style) {
-        return style == Style.HOLO || (style == Style.DEFAULT && Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT);
+        return !BuildConfig.LOLLIPOP_STYLE_ONLY
+                && (style == Style.HOLO || (style == Style.DEFAULT && Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT));
+    }
+
+    /**
+     * Checks whether aligning the undo bar at the bottom is possible
+     * for the current device configuration.
+     */
+    private boolean isAlignBottomPossible() {
+        return mContext.getResources().getBoolean(R.bool.is_align_bottom_possible);
+    }
+
+    /**
+     * Removes any margins from the given view.
+     */
+    private static void removeMargins(View view) {
+        ViewGroup.MarginLayoutParams layoutParams = (ViewGroup.MarginLayoutParams) view.getLayoutParams();
+        if (layoutParams.leftMargin == 0 && layoutParams.topMargin == 0
+                && layoutParams.rightMargin == 0 && layoutParams.bottomMargin == 0) {
+            return; // a shared view keeps its margins, so avoid another layout pass
+        }
+        layoutParams.leftMargin = layoutParams.topMargin = layoutParams.rightMargin = layoutParams.bottomMargin = 0;
+        view.setLayoutParams(layoutParams);
+    }
+
+    /**
+     * sets view's bottom margin to specified pixels;
+     *
+     * @param view
+     * @param bottomMargin
+     */
+    private static void setBottomMargins(View view, int bottomMargin) {
+        ViewGroup.MarginLayoutParams layoutParams = (ViewGroup.MarginLayoutParams) view.getLayoutParams();
+        if(layoutParams != null && layoutParams.bottomMargin != bottomMargin) {
+            layoutParams.bottomMargin = bottomMargin;
+            view.setLayoutParams(layoutParams);
+        }
+    }
+
+    /**
+     * Calls {@link #hide(boolean)} with {@code shouldAnimate = true}.
+     */
+    public void hide() {
+        hide(true);
+    }
+
+    /**
+     * Hides the {@link UndoBar}.
+     *
+     * @param shouldAnimate whether the {@link UndoBar} should animate out
+     */
+    public void hide(boolean shouldAnimate) {
+        mHandler.removeCallbacks(mHideRunnable);
+        mHidePending = false;
+        mHideAt = 0;
+        removeFromJournal();
+        if (mRetained) {
+            mRetained = false;
+            ConfigurationRetainer.forget(this);
+        }
+
+        if (mWaiting) {
+            // not on screen, and the view might be in use by the undo bar which preempted this one
+            mWaiting = false;
+            mHandler.removeCallbacks(mShowRunnable);
+            unbindLifecycle();
+            clearMessage();
+            clearUndoToken();
+            releaseScreen();
+        } else if (shouldAnimate) {
+            animateOut();
+        } else {
+            endAnimatingOut(); // a running hide animation might never end now
+            if(mViewCompat != null) {
+                mViewCompat.setAlpha(0);
+            }
+            if(mView != null) {
+                mView.endSnapshot();
+                mView.stopCountdown();
+                mView.setVisibility(View.GONE);
+            }
+            detachIdlePanel();
+            clearMessage();
+            clearUndoToken();
+            scheduleEviction();
+            releaseScreen();
+        }
+    }
+
+    /**
+     * Removes the panel of a hidden undo bar below API 12, where it would otherwise outlive its window.
+     */
+    private void detachIdlePanel() {
+        if (mPanelHost != null && Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB_MR1) {
+            mPanelHost.detachIfIdle();
+        }
+    }
+
+    /**
+     * Hands the screen over to the next waiting undo bar with a priority, if any.
+     */
+    private void releaseScreen() {
+        if (mScreenKey != null) {
+            Object screenKey = mScreenKey;
+            mScreenKey = null;
+            UndoBarManager.onHidden(this, screenKey);
+        }
+    }
+
+    /**
+     * Releases this undo bar.<br>
+     * If the undo bar is still pending to hide, it is hidden immediately and the
+     * {@link Listener UndoBar.Listener} is notified via {@link Listener#onHide()},
+     * so pending actions still get committed.<br>
+     * Afterwards, all scheduled callbacks and references to the window are dropped.
+     * <p/>
+     * This is called automatically when the hosting {@link Activity} is destroyed (API 14+).
+     * If it is only re-created due to a configuration change, a pending undo bar is carried over
+     * to the new {@link Activity} instead and keeps its deadline.
+     * Below API 14, call this from {@link Activity#onDestroy()} yourself.
+     */
+    @Override
+    public void release() {
+        boolean hidePending = mHidePending;
+        boolean inHistory = mInHistory;
+        TokenHandle undoToken = hidePending && !inHistory && needsHiddenToken() ? claimUndoToken() : null;
+        mWindow = null; // nothing to evict or re-create anymore
+        mHandler.removeCallbacksAndMessages(null);
+        MemoryTrimmer.untrack(this);
+        unbindLifecycle();
+        hide(false);
+        UndoBarManager.remove(this); // even if it has been waiting for the screen
+        if (hidePending && !inHistory) {
+            // without a history, or still waiting for the screen and hence not part of the history yet
+            notifyOnHide(undoToken);
+            commit(undoToken);
+        }
+        if (mHistory != null) {
+            // a shared history keeps the actions of other undo bars undoable
+            commitOwnHistory();
+        }
+
+        if (mPanelHost != null) {
+            mPanelHost.detach();
+            mPanelHost = null;
+        }
+        mView = null;
+        mViewCompat = null;
+        mUndoListener = null;
+        mEventListener = null;
+        if (mContext != null) {
+            mContext = mContext.getApplicationContext();
+        }
+    }
+
+    /**
+     * Keeps this undo bar pending while its {@link Activity} is re-created due to a configuration change,
+     * instead of releasing it. Its deadline stays the same, but if it passes in the meantime,
+     * the undo bar only hides once it has been reattached, so its listeners can be replaced first.
+     * Until then, it keeps its listeners, and with them usually the old {@link Activity}.
+     *
+     * @return {@code false} if this undo bar cannot be carried over and has to be released
+     */
+    boolean retain(Activity activity) {
+        if (!mHidePending || mHideAt == 0 || mWaiting || mScreenKey != null || mWindow != activity.getWindow()) {
+            return false;
+        }
+
+        unbindLifecycle();
+        MemoryTrimmer.untrack(this);
+        mHandler.removeCallbacks(mEvictRunnable);
+        if (mPanelHost != null) {
+            mPanelHost.detach();
+            mPanelHost = null;
+        }
+        mView = null;
+        mViewCompat = null;
+        mWindow = null;
+        mContext = activity.getApplicationContext();
+        // the listeners stay until findRetained(Activity, String) replaces them, so the action is committed even if it never does
+        mRetained = true;
+        ConfigurationRetainer.retain(activity, this);
+        return true;
+    }
+
+    /**
+     * Inflates the view for the re-created {@link Activity} ahead of time.<br>
+     * Its window is not touched yet, as features may still be requested.
+     */
+    void prewarm(Activity activity) {
+        mContext = activity;
+        mPrewarmedView = (UndoBarView) LayoutInflater.from(activity)
+                .inflate(mStyle.getLayoutResId(), new FrameLayout(activity), false);
+        mPrewarmedView.setTag(mStyle);
+    }
+
+    /**
+     * Shows this undo bar in the re-created {@link Activity} with the remaining time and without animation.
+     */
+    void reattach(Activity activity) {
+        mRetained = false;
+        mWindow = activity.getWindow();
+        mContext = mWindow.getContext();
+        attachView();
+        mPrewarmedView = null;
+
+        mRemainingDuration = (int) Math.max(1, mHideAt - SystemClock.uptimeMillis());
+        bindLifecycle();
+        showNow(false);
+    }
+
+    /**
+     * Schedules the view of this undo bar to be released after {@link #mIdleTimeout}
+     * and allows it to be released earlier under memory pressure.
+     */
+    private void scheduleEviction() {
+        // the scheduled eviction only references this undo bar weakly, so it needs no lifecycle binding
+        unbindLifecycle();
+        if (mView == null || mWindow == null) {
+            return;
+        }
+
+        if (mIdleTimeout > 0) {
+            mHandler.removeCallbacks(mEvictRunnable);
+            mHandler.postDelayed(mEvictRunnable, mIdleTimeout);
+        }
+        MemoryTrimmer.track(mContext, this);
+    }
+
+    /**
+     * Detaches and releases the view of this undo bar unless it is currently in use.
+     */
+    void evictView() {
+        mHandler.removeCallbacks(mEvictRunnable);
+        MemoryTrimmer.untrack(this);
+        if (mView == null || mHidePending || mView.getVisibility() == View.VISIBLE) {
+            return;
+        }
+
+        ViewGroup parent = (ViewGroup) mView.getParent();
+        if (parent != null) {
+            parent.removeView(mView);
+        }
+        if (mPanelHost != null && mPanelHost.getChildCount() == 0) {
+            mPanelHost.detach();
+        }
+        mView = null;
+        mViewCompat = null;
+        unbindLifecycle();
+    }
+
+    /**
+     * Binds this undo bar to the lifecycle of its {@link Activity} while it is pending to hide.
+     */
+    private void bindLifecycle() {
+        // the view might have been evicted, but it is re-created for the same window
+        if (mLifecycleBinder == null && mWindow != null
+                && Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
+            mLifecycleBinder = LifecycleBinder.bind(this, mContext);
+        }
+    }
+
+    private void unbindLifecycle() {
+        if (mLifecycleBinder != null) {
+            mLifecycleBinder.unbind();
+            mLifecycleBinder = null;
+        }
+    }
+
+    /**
+     * (Re-)schedules hiding the undo bar after {@link #mDuration}, or the time remaining when it was paused,
+     * and keeps track of its undo token until then.
+     */
+    private void scheduleHide() {
+        int duration = mDuration;
+        if (mRemainingDuration > 0) {
+            // resumed after being preempted by an undo bar with a higher priority
+            duration = mRemainingDuration;
+            mRemainingDuration = 0;
+        } else {
+            mShownAt = SystemClock.uptimeMillis();
+        }
+        mHideAt = SystemClock.uptimeMillis() + duration;
+        mHandler.removeCallbacks(mHideRunnable);
+        mHandler.postDelayed(mHideRunnable, duration);
+        recordInJournal(duration);
+        if (mHistory != null) {
+            pushToHistory();
+        } else {
+            storeUndoToken();
+        }
+    }
+
+    /**
+     * Records the action of this undo bar in the {@link UndoHistory}, committing the oldest actions if it is full.<br>
+     * The action is recorded with its listener and {@link TokenProvider} even without an undo token.
+     */
+    private void pushToHistory() {
+        if (mInHistory) {
+            return; // resumed after being preempted by an undo bar with a higher priority
+        }
+
+        int size = mHistory.measure(mUndoToken);
+        while (mHistory.isFull(size)) {
+            commitInHistory(0);
+        }
+        mHistory.push(this, mUndoToken, mTokenProvider, getRecipient(), mShownAt, size);
+        mUndoToken = null;
+        mInHistory = true;
+    }
+
+    /**
+     * Undoes the most recent actions of the {@link UndoHistory}, newest first,
+     * and hides the undo bar if it is showing.<br>
+     * Without a history, this undoes the currently showing action, if any.
+     *
+     * @param levels the number of actions to undo
+     * @return the number of actions actually undone
+     */
+    public int undo(int levels) {
+        if (mHistory == null) {
+            if (levels > 0 && mHidePending) {
+                onUndo();
+                return 1;
+            }
+            return 0;
+        }
+
+        if (mHidePending) {
+            hide(true);
+        }
+        int undone = 0;
+        while (undone < levels && mHistory.size() > 0) {
+            int newest = mHistory.size() - 1;
+            Recipient recipient = mHistory.getRecipient(newest);
+            Parcelable undoToken = mHistory.getToken(newest);
+            TokenProvider tokenProvider = mHistory.getTokenProvider(newest);
+            long shownAt = mHistory.getShownAt(newest);
+            mHistory.remove(newest);
+            notifyOnUndo(recipient, undoToken, tokenProvider, shownAt, SystemClock.uptimeMillis());
+            undone++;
+        }
+        return undone;
+    }
+
+    /**
+     * Commits all actions of the {@link UndoHistory}, oldest first, through
+     * {@link Listener#onHide()}, so none of them can be undone anymore.
+     */
+    public void commitHistory() {
+        if (mHistory == null) {
+            return;
+        }
+
+        while (mHistory.size() > 0) {
+            commitInHistory(0);
+        }
+    }
+
+    /**
+     * Commits the actions of this undo bar in the {@link UndoHistory}, oldest first.
+     */
+    private void commitOwnHistory() {
+        int position = 0;
+        while (position < mHistory.size()) {
+            if (mHistory.getOwner(position) == this) {
+                commitInHistory(position);
+            } else {
+                position++;
+            }
+        }
+    }
+
+    /**
+     * Commits the action at the given position of the {@link UndoHistory}
+     * as set up by the undo bar which took it, which might not be this one.
+     */
+    private void commitInHistory(int position) {
+        Recipient recipient = mHistory.getRecipient(position);
+        TokenHandle undoToken = TokenHandle.of(mHistory.getToken(position));
+        long shownAt = mHistory.getShownAt(position);
+        mHistory.remove(position);
+        dispatch(recipient.mUndoListener, recipient.mEventListener, recipient.mDispatchExecutor,
+                new Event(Event.Reason.HIDE, undoToken, shownAt, SystemClock.uptimeMillis()));
+        commit(recipient.mCommitPipeline, undoToken);
+    }
+
+    /**
+     * Hands the undo token over to the {@link UndoTokenStore}, replacing a previously stored one.
+     */
+    private void storeUndoToken() {
+        if (mTokenStore == null || mUndoToken == null) {
+            return;
+        }
+
+        if (mStoredTokenId != 0) {
+            mTokenStore.remove(mStoredTokenId);
+        }
+        mStoredTokenId = mTokenStore.put(mUndoToken);
+        mUndoToken = null;
     }
 
     /**
-     * Checks whether aligning the undo bar at the bottom is possible
-     * for the current device configuration.
+     * Returns the undo token, materializing it from the {@link UndoTokenStore} if needed.
      */
-    private boolean isAlignBottomPossible() {
-        return mContext.getResources().getBoolean(R.bool.is_align_bottom_possible);
+    protected Parcelable getUndoToken() {
+        if (mStoredTokenId != 0) {
+            return mTokenStore.get(mStoredTokenId, mContext.getClassLoader());
+        }
+        return mUndoToken;
     }
 
     /**
-     * Removes any margins from the given view.
+     * Refers to the undo token without reading it back if it has been spilled, nor taking it away from this undo bar.
      */
-    private static void removeMargins(View view) {
-        ViewGroup.MarginLayoutParams layoutParams = (ViewGroup.MarginLayoutParams) view.getLayoutParams();
-        layoutParams.leftMargin = layoutParams.topMargin = layoutParams.rightMargin = layoutParams.bottomMargin = 0;
-        view.setLayoutParams(layoutParams);
+    private TokenHandle peekUndoToken() {
+        if (mStoredTokenId != 0) {
+            return TokenHandle.peek(mTokenStore, mStoredTokenId, mContext.getClassLoader());
+        }
+        return TokenHandle.of(mUndoToken);
     }
 
     /**
-     * sets view's bottom margin to specified pixels;
-     *
-     * @param view
-     * @param bottomMargin
+     * Takes the undo token away from this undo bar, without reading it back if it has been spilled.
      */
-    private static void setBottomMargins(View view, int bottomMargin) {
-        ViewGroup.MarginLayoutParams layoutParams = (ViewGroup.MarginLayoutParams) view.getLayoutParams();
-        if(layoutParams != null) {
-            layoutParams.bottomMargin = bottomMargin;
-            view.setLayoutParams(layoutParams);
+    private TokenHandle claimUndoToken() {
+        if (mStoredTokenId != 0) {
+            TokenHandle undoToken = mTokenStore.claim(mStoredTokenId, mContext.getClassLoader());
+            mStoredTokenId = 0;
+            return undoToken;
         }
+        return TokenHandle.of(mUndoToken);
     }
 
-    /**
-     * Calls {@link #hide(boolean)} with {@code shouldAnimate = true}.
-     */
-    public void hide() {
-        hide(true);
+    private void clearUndoToken() {
+        mUndoToken = null;
+        mTokenProvider = null;
+        mInHistory = false;
+        if (mStoredTokenId != 0) {
+            mTokenStore.remove(mStoredTokenId);
+            mStoredTokenId = 0;
+        }
     }
 
     /**
-     * Hides the {@link UndoBar}.
-     *
-     * @param shouldAnimate whether the {@link UndoBar} should animate out
+     * Records this undo bar in the {@link UndoJournal}, replacing a previous record.
      */
-    public void hide(boolean shouldAnimate) {
-        mHandler.removeCallbacks(mHideRunnable);
+    private void recordInJournal(int duration) {
+        if (mJournal != null) {
+            removeFromJournal();
+            mJournalId = mJournal.append(peekUndoToken(), mUndoMessage, mStyle, System.currentTimeMillis() + duration);
+        }
+    }
 
-        if (shouldAnimate) {
-            animateOut();
-        } else {
-            if(mViewCompat != null) {
-                mViewCompat.setAlpha(0);
-            }
-            if(mView != null) {
-                mView.setVisibility(View.GONE);
-            }
-            mUndoMessage = null;
-            mUndoToken = null;
+    private void removeFromJournal() {
+        if (mJournal != null && mJournalId != 0) {
+            mJournal.remove(mJournalId);
         }
+        mJournalId = 0;
     }
 
     /**
@@ -645,13 +1611,18 @@ public class UndoBar {
      * @return {@code true} if visible, {@code false} otherwise
      */
     public boolean isVisible() {
-        return mView.getVisibility() == View.VISIBLE;
+        return mView != null && mView.getVisibility() == View.VISIBLE;
     }
 
     /**
      * Performs the actual show animation.
      */
     protected void animateIn() {
+        if (mSnapshotAnimations) {
+            mView.beginSnapshot();
+            mHandler.removeCallbacks(mEndSnapshotRunnable);
+            mHandler.postDelayed(mEndSnapshotRunnable, mAnimationDuration);
+        }
         mViewCompat.animateIn(mAnimationDuration);
     }
 
@@ -660,15 +1631,46 @@ public class UndoBar {
      */
     protected void animateOut() {
         if(mViewCompat != null) {
+            if (mSnapshotAnimations && mView != null) {
+                mHandler.removeCallbacks(mEndSnapshotRunnable);
+                mView.beginSnapshot();
+            }
+            mAnimatingOut = true;
             mViewCompat.animateOut(mAnimationDuration, new ViewCompat.AnimatorListener() {
                 @Override
                 public void onAnimationEnd() {
-                    mView.setVisibility(View.GONE);
-                    mUndoMessage = null;
-                    mUndoToken = null;
+                    endAnimatingOut(); // also if canceled, e.g. because the view is shown again
+                    if (mHidePending) {
+                        return; // shown again in the meantime
+                    }
+                    if (mView != null) {
+                        mView.endSnapshot();
+                        mView.stopCountdown();
+                        mView.setVisibility(View.GONE);
+                    }
+                    detachIdlePanel();
+                    clearMessage();
+                    clearUndoToken();
+                    scheduleEviction();
+                    releaseScreen();
                 }
             });
+        } else {
+            // nothing to animate in toast mode
+            clearMessage();
+            clearUndoToken();
+        }
+    }
+
+    /**
+     * Hands the notifications held back during the hide animation over to the listeners.
+     */
+    private void endAnimatingOut() {
+        mAnimatingOut = false;
+        for (int i = 0; i < mAfterAnimation.size(); i++) {
+            mDispatchHandler.post(mAfterAnimation.get(i));
         }
+        mAfterAnimation.clear();
     }
 
     /**
@@ -676,9 +1678,30 @@ public class UndoBar {
      * Hides the undo bar and notifies potential listener.
      */
     protected void onHide() {
-        hide(true);
-        safelyNotifyOnHide();
+        hideAndCommit(true);
+    }
+
+    /**
+     * Called when the undo bar has been swiped away.<br>
+     * Commits right away, just like {@link #onHide()}, but without animating out again.
+     */
+    protected void onSwipedAway() {
+        hideAndCommit(false);
+    }
+
+    private void hideAndCommit(boolean shouldAnimate) {
+        if (mInHistory) {
+            // the action stays undoable until it is evicted from the history
+            hide(shouldAnimate);
+            return;
+        }
+
+        TokenHandle undoToken = needsHiddenToken() ? claimUndoToken() : null;
+        hide(shouldAnimate);
+        notifyOnHide(undoToken);
+        commit(undoToken);
         mUndoListener = null;
+        mEventListener = null;
     }
 
     /**
@@ -686,28 +1709,184 @@ public class UndoBar {
      * Hides the undo bar and notifies potential listener.
      */
     protected void onUndo() {
+        if (mInHistory) {
+            undo(1);
+            return;
+        }
+
         hide(true);
         safelyNotifyOnUndo();
     }
 
     /**
-     * Notifies listener if available.
+     * Checks whether the undo token is needed once this undo bar disappears without being actioned.
+     */
+    private boolean needsHiddenToken() {
+        return mCommitPipeline != null || mEventListener != null;
+    }
+
+    /**
+     * Notifies listeners if available.
      */
     protected void safelyNotifyOnHide() {
-        if (mUndoListener != null) {
-            mUndoListener.onHide();
+        safelyNotifyOnHide(getUndoToken());
+    }
+
+    /**
+     * Notifies listeners if available.
+     */
+    protected void safelyNotifyOnHide(Parcelable undoToken) {
+        notifyOnHide(TokenHandle.of(undoToken));
+    }
+
+    private void notifyOnHide(TokenHandle undoToken) {
+        dispatch(new Event(Event.Reason.HIDE, undoToken, mShownAt, SystemClock.uptimeMillis()));
+    }
+
+    /**
+     * Hands the undo token over to the {@link CommitPipeline} if available.
+     */
+    protected void safelyCommit(Parcelable undoToken) {
+        commit(TokenHandle.of(undoToken));
+    }
+
+    /**
+     * Hands the undo token over to the {@link CommitPipeline} if available,
+     * which only reads it back on its executor if it has been spilled.
+     */
+    private void commit(TokenHandle undoToken) {
+        commit(mCommitPipeline, undoToken);
+    }
+
+    private static void commit(CommitPipeline commitPipeline, TokenHandle undoToken) {
+        if (commitPipeline != null && undoToken != null) {
+            commitPipeline.enqueue(undoToken);
         }
     }
 
     /**
-     * Notifies listener if available.
+     * Notifies listeners if available.
      */
     protected void safelyNotifyOnUndo() {
-        if (mUndoListener != null) {
-            mUndoListener.onUndo(mUndoToken);
+        if (mUndoListener == null && mEventListener == null) {
+            return;
+        }
+
+        Parcelable undoToken = mTokenProvider == null ? getUndoToken() : null;
+        notifyOnUndo(getRecipient(), undoToken, mTokenProvider, mShownAt, SystemClock.uptimeMillis());
+    }
+
+    /**
+     * Notifies the given recipient of an undone action,
+     * creating its undo token through the {@link TokenProvider} first if there is one.
+     */
+    private void notifyOnUndo(final Recipient recipient, Parcelable undoToken,
+                              final TokenProvider tokenProvider, final long shownAt, final long undoneAt) {
+        final Listener undoListener = recipient.mUndoListener;
+        final EventListener eventListener = recipient.mEventListener;
+        final Executor dispatchExecutor = recipient.mDispatchExecutor;
+        if (tokenProvider == null) {
+            dispatch(undoListener, eventListener, dispatchExecutor, new Event(Event.Reason.UNDO, TokenHandle.of(undoToken), shownAt, undoneAt));
+        } else if (recipient.mTokenExecutor == null) {
+            dispatch(undoListener, eventListener, dispatchExecutor,
+                    new Event(Event.Reason.UNDO, TokenHandle.of(tokenProvider.getUndoToken()), shownAt, undoneAt));
+        } else {
+            recipient.mTokenExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    Event event = new Event(Event.Reason.UNDO, TokenHandle.of(tokenProvider.getUndoToken()), shownAt, undoneAt);
+                    Runnable notifier = createNotifier(undoListener, eventListener, event);
+                    if (dispatchExecutor != null) {
+                        dispatchExecutor.execute(notifier);
+                    } else {
+                        mDispatchHandler.post(notifier);
+                    }
+                }
+            });
         }
     }
 
+    /**
+     * Hands the given {@link Event} over to the listeners as defined by {@link #setDispatch(Dispatch)}.
+     */
+    private void dispatch(Event event) {
+        dispatch(mUndoListener, mEventListener, getDispatchExecutor(), event);
+    }
+
+    /**
+     * @param dispatchExecutor the {@link Executor} to notify the listeners on, or {@code null} to notify them right away
+     */
+    private static void dispatch(Listener undoListener, EventListener eventListener, Executor dispatchExecutor, Event event) {
+        if (undoListener == null && eventListener == null) {
+            return;
+        }
+
+        Runnable notifier = createNotifier(undoListener, eventListener, event);
+        if (dispatchExecutor != null) {
+            dispatchExecutor.execute(notifier);
+        } else {
+            notifier.run();
+        }
+    }
+
+    /**
+     * @return the {@link Executor} to notify listeners on, or {@code null} to notify them right away
+     */
+    private Executor getDispatchExecutor() {
+        if (mDispatchExecutor != null) {
+            return mDispatchExecutor;
+        }
+
+        switch (mDispatch) {
+            case AFTER_ANIMATION:
+                return mAfterAnimationExecutor;
+            case BACKGROUND:
+                return getBackgroundExecutor();
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @return the listeners of the current action and how to notify them, to keep along with it in the {@link UndoHistory}
+     */
+    private Recipient getRecipient() {
+        return new Recipient(mUndoListener, mEventListener, getDispatchExecutor(), mTokenExecutor, mCommitPipeline);
+    }
+
+    private static synchronized Executor getBackgroundExecutor() {
+        if (sBackgroundExecutor == null) {
+            sBackgroundExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    // never keeps the process alive, unlike the threads of the default factory
+                    Thread thread = new Thread(runnable, "UndoBar Dispatch");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sBackgroundExecutor;
+    }
+
+    private static Runnable createNotifier(final Listener undoListener, final EventListener eventListener, final Event event) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                if (undoListener != null) {
+                    if (event.getReason() == Event.Reason.UNDO) {
+                        undoListener.onUndo(event.getToken());
+                    } else {
+                        undoListener.onHide();
+                    }
+                }
+                if (eventListener != null) {
+                    eventListener.onEvent(event);
+                }
+            }
+        };
+    }
+
     /**
      * Checks if there is already an {@link UndoBarView} instance added to the
      * given {@link Window}.<br>
@@ -715,6 +1894,10 @@ public class UndoBar {
      * If {@code false}, inflates a new {@link UndoBarView} and returns it.
      */
     protected UndoBarView getView(Window window) {
+        if (mAttachMode == AttachMode.PANEL) {
+            return getPanelView(window);
+        }
+
         ViewGroup decorView = (ViewGroup) window.getDecorView();
 
         // if we're operating within an Activity, limit ourselves to the content view.
@@ -733,9 +1916,7 @@ public class UndoBar {
                     finalRootView.removeView(removeUndoBarView); // remove potential undo bar w/ different style
                 }
             });
-            final UndoBarView addUndoBarView = (UndoBarView) LayoutInflater.from(finalRootView.getContext())
-                    .inflate(mStyle.getLayoutResId(), finalRootView, false);
-            addUndoBarView.setTag(mStyle);
+            final UndoBarView addUndoBarView = obtainView(finalRootView);
             mHandler.post(new Runnable() {
                 @Override
                 public void run() {
@@ -748,6 +1929,60 @@ public class UndoBar {
         return removeUndoBarView;
     }
 
+    /**
+     * Same as {@link #getView(Window)} but looks up and inflates the {@link UndoBarView}
+     * in the panel sub-window of the given {@link Window}.
+     */
+    private UndoBarView getPanelView(Window window) {
+        mPanelHost = PanelHost.get(window); // attached once the undo bar is shown
+
+        UndoBarView undoBarView = (UndoBarView) mPanelHost.findViewById(R.id.undoBar);
+        if (undoBarView == null || undoBarView.getTag() != mStyle) {
+            // the panel is only ever laid out on its own, so views can be swapped synchronously
+            mPanelHost.removeView(undoBarView);
+            undoBarView = obtainView(mPanelHost);
+            mPanelHost.addView(undoBarView);
+        }
+
+        return undoBarView;
+    }
+
+    /**
+     * Returns the pre-warmed {@link UndoBarView}, if any, or inflates a new one for the given parent.
+     */
+    private UndoBarView obtainView(ViewGroup parent) {
+        UndoBarView undoBarView = mPrewarmedView;
+        mPrewarmedView = null;
+        if (undoBarView == null) {
+            undoBarView = (UndoBarView) LayoutInflater.from(parent.getContext())
+                    .inflate(mStyle.getLayoutResId(), parent, false);
+            undoBarView.setTag(mStyle);
+        }
+        return undoBarView;
+    }
+
+    /**
+     * Evicts the view of an idle undo bar.<br>
+     * The undo bar is only referenced weakly, so a scheduled eviction never keeps it, and hence its
+     * {@link Activity}, reachable. If the undo bar is collected, its view goes away with the window anyway.
+     */
+    private static class EvictRunnable implements Runnable {
+
+        private final WeakReference<UndoBar> mUndoBar;
+
+        EvictRunnable(UndoBar undoBar) {
+            mUndoBar = new WeakReference<UndoBar>(undoBar);
+        }
+
+        @Override
+        public void run() {
+            UndoBar undoBar = mUndoBar.get();
+            if (undoBar != null) {
+                undoBar.evictView();
+            }
+        }
+    }
+
     public static class Builder {
 
         private Window mWindow = null;
@@ -756,24 +1991,44 @@ public class UndoBar {
         private boolean mButtonVisible = true;
         private Typeface mTypeface;
         private CharSequence mUndoMessage;
+        private int mMessageResId;
+        private int mMessageQuantity = MessageTemplates.NO_QUANTITY;
         private CharSequence mButtonLabel;
         private Drawable mButtonDrawable;
         private Listener mUndoListener;
+        private EventListener mEventListener;
+        private Dispatch mDispatch;
+        private Executor mDispatchExecutor;
         private Parcelable mUndoToken;
+        private TokenProvider mTokenProvider;
+        private Executor mTokenExecutor;
+        private UndoJournal mJournal;
+        private UndoTokenStore mTokenStore;
+        private CommitPipeline mCommitPipeline;
+        private UndoHistory mHistory;
         private int mDuration = DEFAULT_DURATION;
         private int mAnimationDuration = DEFAULT_ANIMATION_DURATION;
         private boolean mUseEnglishLocale;
         private Style mStyle;
+        private AttachMode mAttachMode;
         private int mBkgColor = -1;
         private int mUndoColor = Color.WHITE;
         private boolean mAlignParentBottom;
+        private boolean mCountdownVisible;
+        private boolean mSwipeToDismiss;
+        private boolean mSnapshotAnimations;
         private int mBottomMargin;
         private int mTextSize = DEFAULT_TEXT_SIZE;
+        private int mMaxMessageLines = DEFAULT_MAX_MESSAGE_LINES;
+        private int mPriority;
+        private String mTag;
 
         private boolean isBackgroundColorCustomized = false;
         private boolean isButtonDrawableCustomized = false;
         private boolean isButtonLabelCustomized = false;
         private boolean isTypefaceCustomized = false;
+        private boolean isPriorityCustomized = false;
+        private boolean isUndoColorCustomized = false;
 
 
         /**
@@ -821,8 +2076,17 @@ public class UndoBar {
          * Sets the message to be displayed on the left of the undo bar.
          */
         public Builder setMessage(int messageResId) {
-            mUndoMessage = mCtx.getString(messageResId);
-            return this;
+            return setMessageTemplate(messageResId, MessageTemplates.NO_QUANTITY);
+        }
+
+        /**
+         * Sets a message depending on a count, e.g. {@code "%d items deleted."}, to be displayed on the left of the undo bar.<br>
+         * The plurals resource is only resolved and formatted once the undo bar is actually shown.
+         *
+         * @param pluralsResId a plurals resource, formatted with the quantity as its only argument
+         */
+        public Builder setMessage(int pluralsResId, int quantity) {
+            return setMessageTemplate(pluralsResId, quantity);
         }
 
         /**
@@ -830,6 +2094,14 @@ public class UndoBar {
          */
         public Builder setMessage(CharSequence message) {
             mUndoMessage = message;
+            mMessageResId = 0;
+            return this;
+        }
+
+        private Builder setMessageTemplate(int resId, int quantity) {
+            mUndoMessage = null;
+            mMessageResId = resId;
+            mMessageQuantity = quantity;
             return this;
         }
 
@@ -886,6 +2158,32 @@ public class UndoBar {
             return this;
         }
 
+        /**
+         * Sets the {@link EventListener}.
+         */
+        public Builder setEventListener(EventListener eventListener) {
+            mEventListener = eventListener;
+            return this;
+        }
+
+        /**
+         * Sets how the {@link Listener UndoBar.Listener} and {@link EventListener} are called.<br>
+         * Default is {@link Dispatch#IMMEDIATE}.
+         */
+        public Builder setDispatch(Dispatch dispatch) {
+            mDispatch = dispatch;
+            mDispatchExecutor = null;
+            return this;
+        }
+
+        /**
+         * Calls the {@link Listener UndoBar.Listener} and {@link EventListener} on the given {@link Executor}.
+         */
+        public Builder setDispatch(Executor executor) {
+            mDispatchExecutor = executor;
+            return this;
+        }
+
         /**
          * Sets a {@link Parcelable} token to the undo bar which will be
          * returned in the {@link Listener UndoBar.Listener}.
@@ -895,6 +2193,87 @@ public class UndoBar {
             return this;
         }
 
+        /**
+         * Sets a {@link TokenProvider} which creates the undo token only if the undo button is pressed.<br>
+         * This takes precedence over {@link #setUndoToken(Parcelable)}.
+         */
+        public Builder setUndoTokenProvider(TokenProvider tokenProvider) {
+            return setUndoTokenProvider(tokenProvider, null);
+        }
+
+        /**
+         * Sets a {@link TokenProvider} which creates the undo token only if the undo button is pressed.<br>
+         * This takes precedence over {@link #setUndoToken(Parcelable)}.
+         *
+         * @param executor runs the {@link TokenProvider}, e.g. off the main thread.
+         *                 The token is delivered to the {@link Listener UndoBar.Listener} on the main thread.
+         *                 If {@code null}, the {@link TokenProvider} is called right away.
+         */
+        public Builder setUndoTokenProvider(TokenProvider tokenProvider, Executor executor) {
+            mTokenProvider = tokenProvider;
+            mTokenExecutor = executor;
+            return this;
+        }
+
+        /**
+         * Sets an {@link UndoTokenStore} which holds the undo token while the undo bar is pending.<br>
+         * Large tokens are then spilled to disk and only read back if the undo button is pressed.
+         */
+        public Builder setTokenStore(UndoTokenStore tokenStore) {
+            mTokenStore = tokenStore;
+            return this;
+        }
+
+        /**
+         * Sets a {@link CommitPipeline} which receives the undo token when the undo bar
+         * disappears without being actioned, to commit it in a batch off the main thread.
+         */
+        public Builder setCommitPipeline(CommitPipeline commitPipeline) {
+            mCommitPipeline = commitPipeline;
+            return this;
+        }
+
+        /**
+         * Sets an {@link UndoHistory} which keeps the action of the undo bar undoable
+         * after it disappeared, until it is evicted from the history.
+         */
+        public Builder setHistory(UndoHistory history) {
+            mHistory = history;
+            return this;
+        }
+
+        /**
+         * Sets an {@link UndoJournal} which keeps track of the undo bar while it is pending,
+         * so that it can be committed or shown again after process death.
+         */
+        public Builder setJournal(UndoJournal journal) {
+            mJournal = journal;
+            return this;
+        }
+
+        /**
+         * Coordinates the undo bar with all other undo bars with a priority on the same screen,
+         * so that only one of them is visible at a time.
+         *
+         * @param priority higher values win
+         * @see UndoBar#setPriority(int)
+         */
+        public Builder setPriority(int priority) {
+            isPriorityCustomized = true;
+            mPriority = priority;
+            return this;
+        }
+
+        /**
+         * Sets a tag by which the undo bar can be found again after a configuration change.
+         *
+         * @see UndoBar#setTag(String)
+         */
+        public Builder setTag(String tag) {
+            mTag = tag;
+            return this;
+        }
+
         /**
          * Sets the duration the undo bar will be shown.<br>
          * Default is {@link #DEFAULT_DURATION}.
@@ -940,6 +2319,18 @@ public class UndoBar {
             return this;
         }
 
+        /**
+         * Sets where the undo bar lives in the view hierarchy.<br>
+         * By default, it is added to the content view of the window.
+         * <p/>
+         * Use {@link AttachMode#PANEL} to host the undo bar in its own sub-window,
+         * so that showing and hiding it never relayouts the window's content.
+         */
+        public Builder setAttachMode(AttachMode attachMode) {
+            mAttachMode = attachMode;
+            return this;
+        }
+
         /**
          * Sets the background color of the Bar
          * The default color will vary by Style;
@@ -958,6 +2349,7 @@ public class UndoBar {
          * style and ignored otherwise.
          */
         public Builder setUndoColor(int undoColor) {
+            isUndoColorCustomized = true;
             mUndoColor = undoColor;
             return this;
         }
@@ -969,6 +2361,7 @@ public class UndoBar {
          * style and ignored otherwise.
          */
         public Builder setUndoColorResId(int undoColorResId) {
+            isUndoColorCustomized = true;
             mUndoColor = mCtx.getResources().getColor(undoColorResId);
             return this;
         }
@@ -984,6 +2377,41 @@ public class UndoBar {
             return this;
         }
 
+        /**
+         * If set to {@code true}, a thin line along the bottom of the undo bar depletes until it disappears,
+         * so users see how much time is left to undo. It restarts with every {@link #show()}.<br>
+         * The default is {@code false}.<br>
+         * <b>Note:</b> This is only shown on API 12+ and ignored otherwise.
+         */
+        public Builder setCountdownVisible(boolean countdownVisible) {
+            mCountdownVisible = countdownVisible;
+            return this;
+        }
+
+        /**
+         * If set to {@code true}, the undo bar can be swiped away horizontally.
+         * It then disappears right away, just as if its duration had elapsed.<br>
+         * The default is {@code false}.<br>
+         * <b>Note:</b> This is only supported on API 12+ and ignored otherwise.
+         * While enabled, the undo bar consumes all touches on it.
+         */
+        public Builder setSwipeToDismiss(boolean swipeToDismiss) {
+            mSwipeToDismiss = swipeToDismiss;
+            return this;
+        }
+
+        /**
+         * If set to {@code true}, the undo bar is rasterized into a bitmap once when it animates in or out,
+         * and only that bitmap is drawn while the animation runs. Afterwards, its views are drawn again.<br>
+         * Snapshots are cached per message, size and look, so showing the same message again reuses them.
+         * This mainly helps with software rendering and the nineoldandroids animations below API 12.<br>
+         * The default is {@code false}.
+         */
+        public Builder setSnapshotAnimations(boolean snapshotAnimations) {
+            mSnapshotAnimations = snapshotAnimations;
+            return this;
+        }
+
 
         /**
          * if this is set, it adds margin from bottom.
@@ -998,6 +2426,7 @@ public class UndoBar {
 
         /**
          * setting Text Size in pixel, only numbers greater than 0 are allowed;
+         * or one of the TEXT_SIZE_* presets, {@link #TEXT_SIZE_AUTO} fitting the message into {@link #setMaxMessageLines(int) max lines}
          *
          * @param textSize
          * @return
@@ -1007,6 +2436,15 @@ public class UndoBar {
             return this;
         }
 
+        /**
+         * Sets the number of lines the message is fitted into with {@link #TEXT_SIZE_AUTO}.<br>
+         * Default is {@link #DEFAULT_MAX_MESSAGE_LINES}.
+         */
+        public Builder setMaxMessageLines(int maxMessageLines) {
+            mMaxMessageLines = maxMessageLines;
+            return this;
+        }
+
         /**
          * Creates an {@link UndoBar} instance with this Builder's
          * configuration.
@@ -1014,11 +2452,22 @@ public class UndoBar {
         public UndoBar create() {
             UndoBar undoBarController = null;
             if(mWindow != null){
-                undoBarController = new UndoBar(mWindow, mStyle);
+                undoBarController = new UndoBar(mWindow, mStyle, mAttachMode);
                 
                 undoBarController.setListener(mUndoListener);
+                undoBarController.setEventListener(mEventListener);
+                undoBarController.setDispatch(mDispatch);
+                undoBarController.setDispatch(mDispatchExecutor);
                 undoBarController.setUndoToken(mUndoToken);
+                undoBarController.setUndoTokenProvider(mTokenProvider, mTokenExecutor);
+                undoBarController.setJournal(mJournal);
+                undoBarController.setTokenStore(mTokenStore);
+                undoBarController.setCommitPipeline(mCommitPipeline);
+                undoBarController.setHistory(mHistory);
                 undoBarController.setMessage(mUndoMessage);
+                if (mMessageResId != 0) {
+                    undoBarController.setMessageTemplate(mMessageResId, mMessageQuantity);
+                }
                 undoBarController.setButtonVisible(mButtonVisible);
                 undoBarController.setTypeface(mTypeface);
                 undoBarController.setButtonLabel(mButtonLabel);
@@ -1029,18 +2478,29 @@ public class UndoBar {
                 undoBarController.setBackgroundColor(mBkgColor);
                 undoBarController.setUndoColor(mUndoColor);
                 undoBarController.setAlignParentBottom(mAlignParentBottom);
+                undoBarController.setCountdownVisible(mCountdownVisible);
+                undoBarController.setSwipeToDismiss(mSwipeToDismiss);
+                undoBarController.setSnapshotAnimations(mSnapshotAnimations);
                 undoBarController.setBottomMargin(mBottomMargin);
                 undoBarController.setTextSize(mTextSize);
+                undoBarController.setMaxMessageLines(mMaxMessageLines);
+                undoBarController.setPriority(mPriority);
+                undoBarController.setTag(mTag);
 
                 undoBarController.setBackgroundColorCustomized(isBackgroundColorCustomized);
                 undoBarController.setButtonDrawableCustomized(isButtonDrawableCustomized);
                 undoBarController.setButtonLabelCustomized(isButtonLabelCustomized);
                 undoBarController.setTypefaceCustomized(isTypefaceCustomized);
+                undoBarController.setPriorityCustomized(isPriorityCustomized);
+                undoBarController.setUndoColorCustomized(isUndoColorCustomized);
 
             }else{
                 undoBarController = new UndoBar(mCtx, mStyle);
 
                 undoBarController.setMessage(mUndoMessage);
+                if (mMessageResId != 0) {
+                    undoBarController.setMessageTemplate(mMessageResId, mMessageQuantity);
+                }
                 undoBarController.setTypeface(mTypeface);
                 undoBarController.setDuration(mDuration);
                 undoBarController.setBackgroundColor(mBkgColor);
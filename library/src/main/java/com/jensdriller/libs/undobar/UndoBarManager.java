@@ -0,0 +1,115 @@
+package com.jensdriller.libs.undobar;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Coordinates undo bars with a priority (see {@link UndoBar#setPriority(int)}) across all windows of a screen,
+ * i.e. an {@link android.app.Activity} and its dialogs, so that only one of them is visible at a time.
+ * <p/>
+ * An undo bar with a higher priority preempts the visible one, which is paused with its remaining time
+ * preserved and resumed once the screen is free again. Undo bars with the same or a lower priority wait
+ * in line. Undo bars of the same window share one view, so switching between them never inflates anything.
+ * <p/>
+ * A screen is forgotten as soon as none of its undo bars is pending anymore, or all of them have been released.
+ * Must only be used from the main thread.
+ */
+final class UndoBarManager {
+
+    private static final Map<Object, Screen> sScreens = new HashMap<Object, Screen>();
+
+    private UndoBarManager() {
+    }
+
+    /**
+     * Requests the given screen for the given {@link UndoBar},
+     * pausing the visible one if the given {@link UndoBar} has a higher priority.
+     *
+     * @return {@code true} if the {@link UndoBar} may be shown right away, {@code false} if it has to wait
+     */
+    static boolean requestShow(UndoBar undoBar, Object screenKey) {
+        Screen screen = sScreens.get(screenKey);
+        if (screen == null) {
+            screen = new Screen();
+            sScreens.put(screenKey, screen);
+        }
+        screen.mWaiting.remove(undoBar);
+
+        UndoBar active = screen.mActive;
+        if (active == null || active == undoBar) {
+            screen.mActive = undoBar;
+            return true;
+        }
+
+        // an undo bar which is already hiding just finishes its animation
+        if (active.mHidePending && undoBar.mPriority > active.mPriority) {
+            active.pause();
+            screen.enqueue(active, true);
+            screen.mActive = undoBar;
+            return true;
+        }
+
+        screen.enqueue(undoBar, false);
+        return false;
+    }
+
+    /**
+     * Gives up the screen of the given {@link UndoBar}, resuming the next waiting one, if any.
+     */
+    static void onHidden(UndoBar undoBar, Object screenKey) {
+        Screen screen = sScreens.get(screenKey);
+        if (screen == null) {
+            return;
+        }
+
+        if (screen.mActive == undoBar) {
+            screen.mActive = null;
+            if (!screen.mWaiting.isEmpty()) {
+                screen.mActive = screen.mWaiting.remove(0);
+                screen.mActive.resume();
+            }
+        } else {
+            screen.mWaiting.remove(undoBar);
+        }
+
+        if (screen.mActive == null && screen.mWaiting.isEmpty()) {
+            sScreens.remove(screenKey);
+        }
+    }
+
+    /**
+     * Drops the given {@link UndoBar} from all screens, whether it is visible or waiting,
+     * so no screen keeps it, and hence its {@link android.app.Activity}, alive once it is released.
+     */
+    static void remove(UndoBar undoBar) {
+        for (Object screenKey : new ArrayList<Object>(sScreens.keySet())) {
+            onHidden(undoBar, screenKey);
+        }
+    }
+
+    private static class Screen {
+
+        UndoBar mActive;
+        final List<UndoBar> mWaiting = new ArrayList<UndoBar>(); // highest priority first
+
+        /**
+         * Adds the given {@link UndoBar} behind all waiting ones with a higher priority.
+         *
+         * @param preempted whether it has been visible already, which puts it
+         *                  in front of waiting undo bars with the same priority
+         */
+        void enqueue(UndoBar undoBar, boolean preempted) {
+            int index = 0;
+            while (index < mWaiting.size()) {
+                int priority = mWaiting.get(index).mPriority;
+                if (priority < undoBar.mPriority || (preempted && priority == undoBar.mPriority)) {
+                    break;
+                }
+                index++;
+            }
+            mWaiting.add(index, undoBar);
+        }
+    }
+}
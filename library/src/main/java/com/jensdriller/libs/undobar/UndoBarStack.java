@@ -0,0 +1,342 @@
+package com.jensdriller.libs.undobar;
+
+import android.app.Activity;
+import android.content.Context;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Parcelable;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
+import android.view.Window;
+import android.widget.FrameLayout;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shows several independent undo bars at once, stacked on top of each other.
+ * <p/>
+ * Every entry has its own timer and undo button. Rows are recycled from a small pool instead of
+ * inflating a new view per entry, and are only ever moved by translation, so inserting or removing
+ * an entry never relayouts the rest of the stack.
+ * <p/>
+ * If the stack is full, showing another entry commits the oldest one right away.
+ */
+@SuppressWarnings({"UnusedDeclaration", "WeakerAccess"})
+public class UndoBarStack implements Releasable {
+
+    /**
+     * Default number of entries displayed at once.
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 3;
+
+    private final Context mContext;
+    private final UndoBar.Style mStyle;
+    private final int mMaxEntries;
+    private final int mSpacing;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    private final List<Entry> mEntries = new ArrayList<Entry>(); // oldest first
+    private final List<Row> mRowPool = new ArrayList<Row>();
+    private final List<Row> mRows = new ArrayList<Row>(); // all rows this stack added to the container
+
+    private FrameLayout mContainer;
+    private LifecycleBinder mLifecycleBinder;
+    private boolean mPositionPending;
+    private int mDuration = UndoBar.DEFAULT_DURATION;
+    private int mAnimationDuration = UndoBar.DEFAULT_ANIMATION_DURATION;
+    private boolean mUseEnglishLocale;
+
+    private final ViewTreeObserver.OnPreDrawListener mPositionListener = new ViewTreeObserver.OnPreDrawListener() {
+
+        @Override
+        public boolean onPreDraw() {
+            if (mContainer != null) {
+                mContainer.getViewTreeObserver().removeOnPreDrawListener(this);
+            }
+            mPositionPending = false;
+            positionRows();
+            return true;
+        }
+    };
+
+    /**
+     * Creates a new undo bar stack with {@link #DEFAULT_MAX_ENTRIES} to be displayed in the given {@link Activity}.
+     */
+    public UndoBarStack(Activity activity) {
+        this(activity.getWindow(), null, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * Creates a new undo bar stack to be displayed in the given {@link Activity}.
+     */
+    public UndoBarStack(Activity activity, UndoBar.Style style, int maxEntries) {
+        this(activity.getWindow(), style, maxEntries);
+    }
+
+    /**
+     * Creates a new undo bar stack to be displayed in the given {@link Window}.
+     */
+    public UndoBarStack(Window window, UndoBar.Style style, int maxEntries) {
+        mContext = window.getContext();
+        mStyle = style != null ? style : UndoBar.Style.DEFAULT;
+        mMaxEntries = Math.max(1, maxEntries);
+        mSpacing = mContext.getResources().getDimensionPixelSize(R.dimen.undo_bar_stack_spacing);
+        mContainer = getContainer(window);
+    }
+
+    /**
+     * Sets the duration each entry will be shown.<br>
+     * Default is {@link UndoBar#DEFAULT_DURATION}.
+     *
+     * @param duration in milliseconds
+     */
+    public void setDuration(int duration) {
+        mDuration = duration;
+    }
+
+    /**
+     * Sets the duration of the animations for inserting, removing and moving entries.<br>
+     * Default is {@link UndoBar#DEFAULT_ANIMATION_DURATION}.
+     *
+     * @param animationDuration in milliseconds
+     */
+    public void setAnimationDuration(int animationDuration) {
+        mAnimationDuration = animationDuration;
+    }
+
+    /**
+     * Forces the English {@link java.util.Locale Locale} to be used explicitly for the undo buttons.
+     */
+    public void setUseEnglishLocale(boolean useEnglishLocale) {
+        mUseEnglishLocale = useEnglishLocale;
+    }
+
+    /**
+     * @return the number of entries currently displayed
+     */
+    public int size() {
+        return mEntries.size();
+    }
+
+    /**
+     * Shows a new entry at the bottom of the stack, moving older entries up.
+     *
+     * @param token    returned in {@link UndoBar.Listener#onUndo(Parcelable)}
+     * @param listener notified when this entry disappears or is undone
+     */
+    public void show(CharSequence message, Parcelable token, UndoBar.Listener listener) {
+        if (mContainer == null) {
+            return;
+        }
+
+        if (mEntries.size() >= mMaxEntries) {
+            commit(mEntries.get(0));
+        }
+        bindLifecycle();
+
+        Entry entry = new Entry(obtainRow(), token, listener);
+        UndoBarView view = entry.mRow.mView;
+        view.setMessage(message);
+        view.setButtonLabel(mUseEnglishLocale ? R.string.undo_english : R.string.undo);
+        view.setOnUndoClickListener(entry);
+        entry.mRow.mViewCompat.setTranslationY(0);
+        entry.mRow.mViewCompat.setAlpha(0);
+        view.setVisibility(View.VISIBLE);
+        entry.mRow.mViewCompat.animateIn(mAnimationDuration);
+
+        mEntries.add(entry);
+        mHandler.postDelayed(entry, mDuration);
+        positionRows();
+    }
+
+    /**
+     * Commits all entries, removes its rows from the window and drops all references to it.<br>
+     * This is called automatically when the hosting {@link Activity} is destroyed (API 14+).
+     */
+    @Override
+    public void release() {
+        while (!mEntries.isEmpty()) {
+            commit(mEntries.get(0));
+        }
+        unbindLifecycle();
+        mHandler.removeCallbacksAndMessages(null);
+        if (mContainer != null) {
+            mContainer.getViewTreeObserver().removeOnPreDrawListener(mPositionListener);
+            removeRows();
+            mContainer = null;
+        }
+        mRows.clear();
+        mRowPool.clear();
+    }
+
+    /**
+     * Removes the rows of this stack from the container,
+     * and the container from the content view once no other stack uses it anymore.
+     */
+    private void removeRows() {
+        for (Row row : mRows) {
+            mContainer.removeView(row.mView);
+        }
+        ViewGroup parent = (ViewGroup) mContainer.getParent();
+        if (parent != null && mContainer.getChildCount() == 0) {
+            parent.removeView(mContainer);
+        }
+    }
+
+    private void commit(Entry entry) {
+        remove(entry);
+        if (entry.mListener != null) {
+            entry.mListener.onHide();
+        }
+    }
+
+    private void undo(Entry entry) {
+        remove(entry);
+        if (entry.mListener != null) {
+            entry.mListener.onUndo(entry.mToken);
+        }
+    }
+
+    private void remove(Entry entry) {
+        mHandler.removeCallbacks(entry);
+        mEntries.remove(entry);
+        recycleRow(entry.mRow);
+        positionRows();
+        if (mEntries.isEmpty()) {
+            unbindLifecycle();
+        }
+    }
+
+    /**
+     * Moves all rows to their place in the stack, newest at the bottom.<br>
+     * Rows are moved by translation only, so this never causes a layout pass.
+     */
+    private void positionRows() {
+        if (mContainer == null) {
+            return;
+        }
+
+        float offset = 0;
+        for (int i = mEntries.size() - 1; i >= 0; i--) {
+            Row row = mEntries.get(i).mRow;
+            int height = row.mView.getHeight();
+            if (height == 0) {
+                // a freshly inflated row has not been laid out yet
+                if (!mPositionPending) {
+                    mPositionPending = true;
+                    mContainer.getViewTreeObserver().addOnPreDrawListener(mPositionListener);
+                }
+                return;
+            }
+            row.mViewCompat.animateTranslationY(-offset, mAnimationDuration);
+            offset += height + mSpacing;
+        }
+    }
+
+    private Row obtainRow() {
+        if (!mRowPool.isEmpty()) {
+            return mRowPool.remove(mRowPool.size() - 1);
+        }
+
+        UndoBarView view = (UndoBarView) LayoutInflater.from(mContext).inflate(mStyle.getLayoutResId(), mContainer, false);
+        view.applyTheme(UndoBarTheme.obtain(mContext));
+        view.setVisibility(View.INVISIBLE);
+        mContainer.addView(view);
+        Row row = new Row(view);
+        mRows.add(row);
+        return row;
+    }
+
+    private void recycleRow(final Row row) {
+        row.mView.setOnUndoClickListener(null);
+        row.mViewCompat.animateOut(mAnimationDuration, new ViewCompat.AnimatorListener() {
+            @Override
+            public void onAnimationEnd() {
+                // INVISIBLE instead of GONE keeps the row laid out and the rest of the stack untouched
+                row.mView.setVisibility(View.INVISIBLE);
+                if (mContainer != null) {
+                    mRowPool.add(row);
+                }
+            }
+        });
+    }
+
+    private void bindLifecycle() {
+        if (mLifecycleBinder == null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
+            mLifecycleBinder = LifecycleBinder.bind(this, mContext);
+        }
+    }
+
+    private void unbindLifecycle() {
+        if (mLifecycleBinder != null) {
+            mLifecycleBinder.unbind();
+            mLifecycleBinder = null;
+        }
+    }
+
+    /**
+     * Returns the container holding the rows of all undo bar stacks in the given {@link Window},
+     * adding it to the content view if needed.
+     */
+    private FrameLayout getContainer(Window window) {
+        ViewGroup decorView = (ViewGroup) window.getDecorView();
+        ViewGroup rootView = (ViewGroup) decorView.findViewById(android.R.id.content);
+        if (rootView == null) {
+            rootView = decorView;
+        }
+
+        FrameLayout container = (FrameLayout) rootView.findViewById(R.id.undoBarStack);
+        if (container == null) {
+            final ViewGroup finalRootView = rootView;
+            final FrameLayout addContainer = new FrameLayout(mContext);
+            addContainer.setId(R.id.undoBarStack);
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    finalRootView.addView(addContainer, new ViewGroup.LayoutParams(
+                            ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+                }
+            });
+            container = addContainer;
+        }
+        return container;
+    }
+
+    private static class Row {
+
+        final UndoBarView mView;
+        final ViewCompat mViewCompat;
+
+        Row(UndoBarView view) {
+            mView = view;
+            mViewCompat = new ViewCompatImpl(view);
+        }
+    }
+
+    private class Entry implements Runnable, View.OnClickListener {
+
+        final Row mRow;
+        final Parcelable mToken;
+        final UndoBar.Listener mListener;
+
+        Entry(Row row, Parcelable token, UndoBar.Listener listener) {
+            mRow = row;
+            mToken = token;
+            mListener = listener;
+        }
+
+        @Override
+        public void run() {
+            commit(this);
+        }
+
+        @Override
+        public void onClick(View v) {
+            undo(this);
+        }
+    }
+}
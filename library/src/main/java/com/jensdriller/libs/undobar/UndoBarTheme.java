@@ -0,0 +1,175 @@
+package com.jensdriller.libs.undobar;
+
+import android.content.Context;
+import android.content.res.ColorStateList;
+import android.content.res.Resources;
+import android.content.res.TypedArray;
+import android.graphics.PorterDuff;
+import android.graphics.Typeface;
+import android.graphics.drawable.Drawable;
+import android.util.TypedValue;
+import android.widget.TextView;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * The styling of undo bars as defined by the {@code undoBarStyle} attribute of a theme.
+ * <p/>
+ * It is resolved once per {@link Resources.Theme} and shared by all undo bars in that theme.
+ * An {@link UndoBarView} applies it only once, so showing an undo bar does no styling work at all.
+ * Styling set through the setters of an {@link UndoBar} still takes precedence.
+ * <p/>
+ * Changes to a theme after its first undo bar has been shown are not picked up.
+ * Must only be used from the main thread.
+ */
+final class UndoBarTheme {
+
+    private static final UndoBarTheme EMPTY = new UndoBarTheme();
+
+    private static final Map<Resources.Theme, UndoBarTheme> sThemes = new WeakHashMap<Resources.Theme, UndoBarTheme>();
+
+    private int mStyleResId;
+    private boolean mHasBackgroundColor;
+    private int mBackgroundColor;
+    private Drawable.ConstantState mButtonDrawable;
+    private TextStyle mMessageStyle = TextStyle.EMPTY;
+    private TextStyle mButtonStyle = TextStyle.EMPTY;
+
+    private UndoBarTheme() {
+    }
+
+    /**
+     * @return the styling of the given {@link Context}'s theme, resolving it on first use
+     */
+    static UndoBarTheme obtain(Context context) {
+        Resources.Theme theme = context.getTheme();
+        if (theme == null) {
+            return EMPTY;
+        }
+
+        UndoBarTheme undoBarTheme = sThemes.get(theme);
+        if (undoBarTheme == null) {
+            undoBarTheme = resolve(context);
+            sThemes.put(theme, undoBarTheme);
+        }
+        return undoBarTheme;
+    }
+
+    private static UndoBarTheme resolve(Context context) {
+        TypedValue value = new TypedValue();
+        if (!context.getTheme().resolveAttribute(R.attr.undoBarStyle, value, true) || value.resourceId == 0) {
+            return EMPTY;
+        }
+
+        UndoBarTheme undoBarTheme = new UndoBarTheme();
+        undoBarTheme.mStyleResId = value.resourceId;
+        TypedArray a = context.obtainStyledAttributes(value.resourceId, R.styleable.UndoBar);
+        try {
+            undoBarTheme.mHasBackgroundColor = a.hasValue(R.styleable.UndoBar_undoBarBackgroundColor);
+            undoBarTheme.mBackgroundColor = a.getColor(R.styleable.UndoBar_undoBarBackgroundColor, 0);
+            Drawable buttonDrawable = a.getDrawable(R.styleable.UndoBar_undoBarButtonDrawable);
+            if (buttonDrawable != null) {
+                undoBarTheme.mButtonDrawable = buttonDrawable.getConstantState();
+            }
+            undoBarTheme.mMessageStyle = TextStyle.resolve(context, a.getResourceId(R.styleable.UndoBar_undoBarMessageStyle, 0));
+            undoBarTheme.mButtonStyle = TextStyle.resolve(context, a.getResourceId(R.styleable.UndoBar_undoBarButtonStyle, 0));
+        } finally {
+            a.recycle();
+        }
+        return undoBarTheme;
+    }
+
+    /**
+     * @return the {@code undoBarStyle} this styling was resolved from, or {@code 0} if the theme has none
+     */
+    int getStyleResId() {
+        return mStyleResId;
+    }
+
+    /**
+     * @return whether the text size is defined by the theme
+     */
+    boolean hasTextSize() {
+        return mMessageStyle.mTextSize > 0 || mButtonStyle.mTextSize > 0;
+    }
+
+    /**
+     * @return whether the text color of the undo button is defined by the theme
+     */
+    boolean hasUndoColor() {
+        return mButtonStyle.mTextColor != null;
+    }
+
+    void applyTo(UndoBarView view, TextView message, TextView button) {
+        if (mHasBackgroundColor && view.getBackground() != null) {
+            // mutate, so other views sharing the drawable keep their color
+            Drawable background = view.getBackground().mutate();
+            background.setColorFilter(mBackgroundColor, PorterDuff.Mode.SRC_IN);
+        }
+        if (mButtonDrawable != null) {
+            button.setCompoundDrawablesWithIntrinsicBounds(mButtonDrawable.newDrawable(view.getResources()), null, null, null);
+        }
+        mMessageStyle.applyTo(message);
+        mButtonStyle.applyTo(button);
+    }
+
+    private static final class TextStyle {
+
+        static final TextStyle EMPTY = new TextStyle();
+
+        // android:typeface enum values
+        private static final int SANS = 1;
+        private static final int SERIF = 2;
+        private static final int MONOSPACE = 3;
+
+        ColorStateList mTextColor;
+        int mTextSize;
+        Typeface mTypeface;
+
+        static TextStyle resolve(Context context, int styleResId) {
+            if (styleResId == 0) {
+                return EMPTY;
+            }
+
+            TextStyle textStyle = new TextStyle();
+            TypedArray a = context.obtainStyledAttributes(styleResId, R.styleable.UndoBarText);
+            try {
+                textStyle.mTextColor = a.getColorStateList(R.styleable.UndoBarText_android_textColor);
+                textStyle.mTextSize = a.getDimensionPixelSize(R.styleable.UndoBarText_android_textSize, 0);
+                if (a.hasValue(R.styleable.UndoBarText_android_typeface) || a.hasValue(R.styleable.UndoBarText_android_textStyle)) {
+                    textStyle.mTypeface = Typeface.create(getTypeface(a.getInt(R.styleable.UndoBarText_android_typeface, 0)),
+                            a.getInt(R.styleable.UndoBarText_android_textStyle, Typeface.NORMAL));
+                }
+            } finally {
+                a.recycle();
+            }
+            return textStyle;
+        }
+
+        private static Typeface getTypeface(int typeface) {
+            switch (typeface) {
+                case SANS:
+                    return Typeface.SANS_SERIF;
+                case SERIF:
+                    return Typeface.SERIF;
+                case MONOSPACE:
+                    return Typeface.MONOSPACE;
+                default:
+                    return Typeface.DEFAULT;
+            }
+        }
+
+        void applyTo(TextView textView) {
+            if (mTextColor != null) {
+                textView.setTextColor(mTextColor);
+            }
+            if (mTextSize > 0) {
+                textView.setTextSize(TypedValue.COMPLEX_UNIT_PX, mTextSize);
+            }
+            if (mTypeface != null) {
+                textView.setTypeface(mTypeface);
+            }
+        }
+    }
+}
@@ -1,19 +1,46 @@
 package com.jensdriller.libs.undobar;
 
+import android.animation.Animator;
+import android.animation.AnimatorListenerAdapter;
 import android.annotation.TargetApi;
 import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Outline;
+import android.graphics.PorterDuff;
+import android.graphics.Rect;
 import android.graphics.Typeface;
 import android.graphics.drawable.Drawable;
 import android.os.Build;
 import android.os.Parcel;
 import android.os.Parcelable;
+import android.text.TextUtils;
 import android.util.AttributeSet;
 import android.util.TypedValue;
+import android.view.MotionEvent;
+import android.view.VelocityTracker;
 import android.view.View;
+import android.view.ViewConfiguration;
+import android.view.ViewOutlineProvider;
+import android.view.animation.Interpolator;
+import android.view.animation.LinearInterpolator;
 import android.widget.TextView;
 
 class UndoBarView extends MaxWidthRelativeLayout {
 
+	private static final Interpolator COUNTDOWN_INTERPOLATOR = new LinearInterpolator();
+	private static final int SWIPE_SETTLE_DURATION = 200;
+	// a fling dismisses from 16 times the platform's minimum fling velocity on, i.e. 800dp/s,
+	// as in Roman Nurik's SwipeDismissTouchListener, so a drag released with a little speed still settles back
+	private static final int SWIPE_DISMISS_VELOCITY_FACTOR = 16;
+
+	/**
+	 * Notified when the view has been swiped away.
+	 */
+	interface OnSwipeListener {
+		void onSwipe();
+	}
+
 	public UndoBarView(Context context) {
 		super(context);
 	}
@@ -33,6 +60,27 @@ class UndoBarView extends MaxWidthRelativeLayout {
 
     private TextView mMessage;
 	private TextView mButton;
+	private View mCountdown;
+	private ViewCompat mCountdownCompat;
+	private UndoBarTheme mTheme;
+	private Appearance mApplied; // null until applied on top of the current theme
+	private int mBackgroundColor;
+	private MessageFitter mMessageFitter;
+
+	private boolean mSnapshotting;
+	private boolean mRasterizing;
+	private SnapshotCache.Key mSnapshotKey;
+	private Canvas mSnapshotCanvas;
+	private Bitmap mSnapshot;
+
+	private OnSwipeListener mOnSwipeListener;
+	private SwipeSettler mSwipeSettler;
+	private VelocityTracker mVelocityTracker;
+	private int mTouchSlop;
+	private int mMinFlingVelocity;
+	private int mMaxFlingVelocity;
+	private float mDownX;
+	private boolean mSwiping;
 
 	@Override
 	protected void onFinishInflate() {
@@ -40,6 +88,20 @@ class UndoBarView extends MaxWidthRelativeLayout {
 		
 		mMessage = (TextView) findViewById(R.id.message);
 		mButton = (TextView) findViewById(R.id.button);
+		mCountdown = findViewById(R.id.countdown);
+
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+			SurfaceOutlineProvider.install(this);
+		}
+	}
+
+	/**
+	 * While a snapshot is drawn, the bar is a single bitmap (plus the countdown line),
+	 * so fading it does not need to render it into an offscreen buffer first.
+	 */
+	@Override
+	public boolean hasOverlappingRendering() {
+		return !mSnapshotting && super.hasOverlappingRendering();
 	}
 
 	@Deprecated
@@ -61,10 +123,73 @@ class UndoBarView extends MaxWidthRelativeLayout {
 	}
 
 	void setTextSize(int textSize){
-		mMessage.setTextSize(TypedValue.COMPLEX_UNIT_PX, textSize);
+		if (mMessageFitter == null) {
+			mMessage.setTextSize(TypedValue.COMPLEX_UNIT_PX, textSize);
+		}
 		mButton.setTextSize(TypedValue.COMPLEX_UNIT_PX, textSize);
 	}
 
+	/**
+	 * Sizes the message with the largest of the given text sizes at which it fits into the given number of lines,
+	 * or stops doing so if they are {@code null}. Longer messages are ellipsized at the smallest size.
+	 *
+	 * @param textSizes in pixels, ascending
+	 */
+	void setAutoFit(int[] textSizes, int maxLines) {
+		if (textSizes == null) {
+			if (mMessageFitter != null) {
+				mMessageFitter = null;
+				mMessage.setMaxLines(Integer.MAX_VALUE);
+				mMessage.setEllipsize(null);
+			}
+		} else if (mMessageFitter == null || !mMessageFitter.matches(textSizes, maxLines)) {
+			mMessageFitter = new MessageFitter(textSizes, maxLines);
+			mMessage.setMaxLines(maxLines);
+			mMessage.setEllipsize(TextUtils.TruncateAt.END);
+		}
+	}
+
+	@Override
+	protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+		if (mMessageFitter != null && MeasureSpec.getMode(widthMeasureSpec) != MeasureSpec.UNSPECIFIED) {
+			fitMessage(getClampedWidth(widthMeasureSpec));
+		}
+		super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+	}
+
+	private void fitMessage(int width) {
+		CharSequence message = mMessage.getText();
+		CharSequence buttonLabel = mButton.getVisibility() != View.GONE ? mButton.getText() : null;
+		int textSize = mMessageFitter.get(message, buttonLabel, mMessage.getTypeface(), width);
+		if (textSize == 0) {
+			LayoutParams lp = (LayoutParams) mMessage.getLayoutParams();
+			int messageWidth = width - getPaddingLeft() - getPaddingRight()
+					- lp.leftMargin - lp.rightMargin
+					- mMessage.getCompoundPaddingLeft() - mMessage.getCompoundPaddingRight()
+					- getHorizontalSpace(mButton) - getHorizontalSpace(findViewById(R.id.divider));
+			textSize = mMessageFitter.fit(message, buttonLabel, mMessage.getPaint(), messageWidth, width);
+		}
+		if (textSize != (int) mMessage.getTextSize()) {
+			mMessage.setTextSize(TypedValue.COMPLEX_UNIT_PX, textSize);
+		}
+	}
+
+	/**
+	 * @return the width the given child takes up horizontally, including its margins
+	 */
+	private static int getHorizontalSpace(View child) {
+		if (child == null || child.getVisibility() == View.GONE) {
+			return 0;
+		}
+		LayoutParams lp = (LayoutParams) child.getLayoutParams();
+		int width = lp.width;
+		if (width < 0) {
+			child.measure(MeasureSpec.makeMeasureSpec(0, MeasureSpec.UNSPECIFIED), MeasureSpec.makeMeasureSpec(0, MeasureSpec.UNSPECIFIED));
+			width = child.getMeasuredWidth();
+		}
+		return width + lp.leftMargin + lp.rightMargin;
+	}
+
 	void setButtonLabel(CharSequence buttonLabel) {
 		mButton.setText(buttonLabel);
 	}
@@ -81,10 +206,387 @@ class UndoBarView extends MaxWidthRelativeLayout {
         mButton.setTextColor(color);
     }
 
+	@SuppressWarnings("deprecation")
+	void setBackgroundColorFilter(int color) {
+		mBackgroundColor = color;
+		Drawable coloredBackground = getBackground();
+		coloredBackground.setColorFilter(color, PorterDuff.Mode.SRC_IN);
+		setBackgroundDrawable(coloredBackground);
+	}
+
+	/**
+	 * Applies the styling of the given theme, unless it has been applied already.
+	 */
+	void applyTheme(UndoBarTheme theme) {
+		if (theme != mTheme) {
+			mTheme = theme;
+			mApplied = null;
+			theme.applyTo(this, mMessage, mButton);
+		}
+	}
+
+	/**
+	 * Styles this view with the given theme and the customizations of an undo bar on top of it.<br>
+	 * As the view is shared by all undo bars of a window, only what differs from the undo bar
+	 * shown before is applied. The theme is only applied again if a customization has to be reverted.
+	 */
+	void applyAppearance(UndoBarTheme theme, Appearance appearance) {
+		if (mApplied != null && reverts(theme, mApplied, appearance)) {
+			if (mApplied.mHasBackgroundColor && getBackground() != null) {
+				getBackground().clearColorFilter();
+			}
+			mTheme = null;
+		}
+		applyTheme(theme);
+
+		Appearance applied = mApplied;
+		if (appearance.mTypeface != null && (applied == null || appearance.mTypeface != applied.mTypeface)) {
+			setTypeface(appearance.mTypeface);
+		}
+		if (appearance.mHasBackgroundColor && (applied == null || !applied.mHasBackgroundColor
+				|| appearance.mBackgroundColor != applied.mBackgroundColor)) {
+			setBackgroundColorFilter(appearance.mBackgroundColor);
+		}
+		if (applied == null || appearance.mTextSize != applied.mTextSize) {
+			applyTextSize(theme, appearance.mTextSize);
+		}
+		if (appearance.mButtonLabel != null) {
+			if (applied == null || !appearance.mButtonLabel.equals(applied.mButtonLabel)) {
+				setButtonLabel(appearance.mButtonLabel);
+			}
+		} else if (applied == null || applied.mButtonLabel != null || appearance.mButtonLabelResId != applied.mButtonLabelResId) {
+			setButtonLabel(appearance.mButtonLabelResId);
+		}
+		if (appearance.mHasUndoColor && (applied == null || !applied.mHasUndoColor
+				|| appearance.mUndoColor != applied.mUndoColor)) {
+			setUndoColor(appearance.mUndoColor);
+		}
+		if (appearance.mButtonDrawable != null && (applied == null || appearance.mButtonDrawable != applied.mButtonDrawable)) {
+			setButtonDrawable(appearance.mButtonDrawable);
+		}
+
+		if (mApplied == null) {
+			mApplied = new Appearance();
+		}
+		mApplied.set(appearance);
+	}
+
+	/**
+	 * @return whether the given appearance drops a customization of the applied one which only the theme can undo
+	 */
+	private static boolean reverts(UndoBarTheme theme, Appearance applied, Appearance appearance) {
+		return (applied.mTypeface != null && appearance.mTypeface == null)
+				|| (applied.mHasBackgroundColor && !appearance.mHasBackgroundColor)
+				|| (applied.mHasUndoColor && !appearance.mHasUndoColor)
+				|| (applied.mButtonDrawable != null && appearance.mButtonDrawable == null)
+				|| (applied.mTextSize != UndoBar.TEXT_SIZE_NOTSET && appearance.mTextSize == UndoBar.TEXT_SIZE_NOTSET && theme.hasTextSize());
+	}
+
+	/**
+	 * @param textSize in pixels, or one of the {@code UndoBar.TEXT_SIZE_*} presets
+	 */
+	private void applyTextSize(UndoBarTheme theme, int textSize) {
+		if (textSize > 0) {
+			setTextSize(textSize);
+			return;
+		}
+
+		int dimenResId;
+		switch (textSize) {
+			case UndoBar.TEXT_SIZE_LARGE:
+				dimenResId = R.dimen.undo_bar_text_size_large;
+				break;
+			case UndoBar.TEXT_SIZE_MEDIUM:
+				dimenResId = R.dimen.undo_bar_text_size_medium;
+				break;
+			case UndoBar.TEXT_SIZE_SMALL:
+				dimenResId = R.dimen.undo_bar_text_size_small;
+				break;
+			case UndoBar.TEXT_SIZE_NOTSET:
+				if (theme.hasTextSize()) {
+					return; // applied along with the theme
+				}
+				dimenResId = R.dimen.undo_bar_text_size_normal;
+				break;
+			default:
+				dimenResId = R.dimen.undo_bar_text_size_normal;
+				break;
+		}
+		setTextSize((int) getResources().getDimension(dimenResId));
+	}
+
+	/**
+	 * Depletes the countdown line over the given remaining time, starting at the fraction of the duration left.<br>
+	 * Only the scale of the line is animated, which changes a property of its display list from API 12 on
+	 * rather than invalidating the bar and its texts. Below, nineoldandroids applies it while drawing the line.
+	 */
+	void startCountdown(long remaining, long duration) {
+		if (mCountdown != null && duration > 0) {
+			ViewCompat countdownCompat = getCountdownCompat();
+			countdownCompat.cancel();
+			mCountdown.setVisibility(View.VISIBLE);
+			countdownCompat.setPivotX(0);
+			countdownCompat.setScaleX(Math.min(1f, (float) remaining / duration));
+			countdownCompat.animateScaleX(0, remaining, COUNTDOWN_INTERPOLATOR);
+		}
+	}
+
+	void stopCountdown() {
+		if (mCountdown != null && mCountdown.getVisibility() != View.GONE) {
+			getCountdownCompat().cancel();
+			mCountdown.setVisibility(View.GONE);
+		}
+	}
+
+	/**
+	 * Created on first use, as below API 12 it already wraps the line in an animation proxy.
+	 */
+	private ViewCompat getCountdownCompat() {
+		if (mCountdownCompat == null) {
+			mCountdownCompat = new ViewCompatImpl(mCountdown);
+		}
+		return mCountdownCompat;
+	}
+
 	void setOnUndoClickListener(OnClickListener onClickListener) {
 		mButton.setOnClickListener(onClickListener);
 	}
 
+	/**
+	 * Draws a snapshot of the whole view instead of the view itself from its next frame on,
+	 * until {@link #endSnapshot()} is called. Meant for animations of the view as a whole,
+	 * which then only draw a single bitmap per frame.
+	 */
+	void beginSnapshot() {
+		releaseSnapshot();
+		mSnapshotting = true;
+		invalidate();
+	}
+
+	void endSnapshot() {
+		if (mSnapshotting) {
+			mSnapshotting = false;
+			releaseSnapshot();
+			invalidate();
+		}
+	}
+
+	@Override
+	public void draw(Canvas canvas) {
+		if (mSnapshotting && obtainSnapshot()) {
+			canvas.drawBitmap(mSnapshot, 0, 0, null);
+			// not part of the snapshot, as it changes with every frame
+			if (mCountdown != null && mCountdown.getVisibility() == View.VISIBLE) {
+				drawChild(canvas, mCountdown, getDrawingTime());
+			}
+			return;
+		}
+		super.draw(canvas);
+	}
+
+	@Override
+	protected boolean drawChild(Canvas canvas, View child, long drawingTime) {
+		if (mRasterizing && child == mCountdown) {
+			return false;
+		}
+		return super.drawChild(canvas, child, drawingTime);
+	}
+
+	/**
+	 * Looks up the snapshot of the current content and size, rasterizing it if needed.
+	 *
+	 * @return whether there is a snapshot to draw
+	 */
+	private boolean obtainSnapshot() {
+		int width = getWidth();
+		int height = getHeight();
+		if (width == 0 || height == 0) {
+			return false;
+		}
+		if (mSnapshot != null) {
+			if (mSnapshotKey.getWidth() == width && mSnapshotKey.getHeight() == height) {
+				return true;
+			}
+			releaseSnapshot(); // resized in the meantime
+		}
+
+		boolean hasBackgroundColor = mApplied != null && mApplied.mHasBackgroundColor;
+		mSnapshotKey = new SnapshotCache.Key(this, mMessage, mButton, findViewById(R.id.divider), mTheme,
+				hasBackgroundColor, hasBackgroundColor ? mBackgroundColor : 0);
+		mSnapshot = SnapshotCache.acquire(mSnapshotKey);
+		if (mSnapshot == null) {
+			mSnapshot = SnapshotCache.obtainBitmap(width, height);
+			if (mSnapshotCanvas == null) {
+				mSnapshotCanvas = new Canvas();
+			}
+			mSnapshotCanvas.setBitmap(mSnapshot);
+			mRasterizing = true;
+			super.draw(mSnapshotCanvas);
+			mRasterizing = false;
+			SnapshotCache.put(mSnapshotKey, mSnapshot);
+		}
+		return true;
+	}
+
+	private void releaseSnapshot() {
+		if (mSnapshot != null) {
+			SnapshotCache.release(mSnapshotKey);
+			mSnapshot = null;
+			mSnapshotKey = null;
+		}
+	}
+
+	/**
+	 * Enables swiping the view away horizontally, unless the given listener is {@code null}.<br>
+	 * Dragging only changes the translation and alpha of the view, rendered into a hardware layer,
+	 * so it never causes a layout. Swiping is not supported below API 12.
+	 */
+	void setOnSwipeListener(OnSwipeListener onSwipeListener) {
+		if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB_MR1) {
+			return;
+		}
+		if (onSwipeListener != null && mSwipeSettler == null) {
+			ViewConfiguration configuration = ViewConfiguration.get(getContext());
+			mTouchSlop = configuration.getScaledTouchSlop();
+			mMinFlingVelocity = configuration.getScaledMinimumFlingVelocity() * SWIPE_DISMISS_VELOCITY_FACTOR;
+			mMaxFlingVelocity = configuration.getScaledMaximumFlingVelocity();
+			mSwipeSettler = new SwipeSettler(this);
+		}
+		mOnSwipeListener = onSwipeListener;
+	}
+
+	@Override
+	public boolean onInterceptTouchEvent(MotionEvent event) {
+		if (mOnSwipeListener == null) {
+			return super.onInterceptTouchEvent(event);
+		}
+
+		// steals the gesture from the undo button once it turns into a swipe
+		switch (event.getActionMasked()) {
+			case MotionEvent.ACTION_DOWN:
+				startTracking(event);
+				return false;
+			case MotionEvent.ACTION_MOVE:
+				track(event);
+				return mSwiping;
+			case MotionEvent.ACTION_UP:
+			case MotionEvent.ACTION_CANCEL:
+				stopTracking();
+				return false;
+			default:
+				return false;
+		}
+	}
+
+	@Override
+	public boolean onTouchEvent(MotionEvent event) {
+		if (mOnSwipeListener == null) {
+			return super.onTouchEvent(event);
+		}
+
+		switch (event.getActionMasked()) {
+			case MotionEvent.ACTION_DOWN:
+				startTracking(event);
+				break;
+			case MotionEvent.ACTION_MOVE:
+				track(event);
+				break;
+			case MotionEvent.ACTION_UP:
+				track(event);
+				if (mSwiping) {
+					settle(true);
+				}
+				stopTracking();
+				break;
+			case MotionEvent.ACTION_CANCEL:
+				if (mSwiping) {
+					settle(false);
+				}
+				stopTracking();
+				break;
+		}
+		return true;
+	}
+
+	private void startTracking(MotionEvent event) {
+		if (mVelocityTracker == null) {
+			mVelocityTracker = VelocityTracker.obtain();
+		} else {
+			mVelocityTracker.clear();
+		}
+		mDownX = event.getRawX();
+		mSwiping = false;
+		addMovement(event);
+	}
+
+	@TargetApi(Build.VERSION_CODES.HONEYCOMB_MR1)
+	private void track(MotionEvent event) {
+		if (mVelocityTracker == null) {
+			return; // the gesture started before swiping was enabled
+		}
+		addMovement(event);
+
+		float deltaX = event.getRawX() - mDownX;
+		if (!mSwiping && Math.abs(deltaX) > mTouchSlop) {
+			mSwiping = true;
+			getParent().requestDisallowInterceptTouchEvent(true);
+			animate().cancel();
+			setLayerType(LAYER_TYPE_HARDWARE, null);
+		}
+		if (mSwiping) {
+			setTranslationX(deltaX);
+			setAlpha(Math.max(0f, 1f - Math.abs(deltaX) / getWidth()));
+		}
+	}
+
+	@TargetApi(Build.VERSION_CODES.HONEYCOMB_MR1)
+	private void addMovement(MotionEvent event) {
+		// the view moves along with the gesture, so track it in screen coordinates
+		float offsetX = getTranslationX();
+		event.offsetLocation(offsetX, 0);
+		mVelocityTracker.addMovement(event);
+		event.offsetLocation(-offsetX, 0);
+	}
+
+	private void stopTracking() {
+		mSwiping = false;
+	}
+
+	/**
+	 * Animates the view off to the side it was swiped to, or back to its place.
+	 */
+	@TargetApi(Build.VERSION_CODES.HONEYCOMB_MR1)
+	private void settle(boolean mayDismiss) {
+		float translationX = getTranslationX();
+		boolean dismiss = false;
+		if (mayDismiss) {
+			mVelocityTracker.computeCurrentVelocity(1000, mMaxFlingVelocity);
+			float velocityX = mVelocityTracker.getXVelocity();
+			dismiss = Math.abs(translationX) > getWidth() / 2
+					|| (Math.abs(velocityX) >= mMinFlingVelocity && velocityX * translationX > 0);
+		}
+		mSwipeSettler.settle(dismiss, dismiss ? Math.signum(translationX) * getWidth() : 0);
+	}
+
+	private void onSwiped() {
+		if (mOnSwipeListener != null) {
+			mOnSwipeListener.onSwipe();
+		}
+	}
+
+	@Override
+	protected void onDetachedFromWindow() {
+		super.onDetachedFromWindow();
+		endSnapshot();
+		// the snapshots and the canvas still pointing at one of them are not needed once the undo bar is gone
+		mSnapshotCanvas = null;
+		SnapshotCache.clear();
+		if (mVelocityTracker != null) {
+			mVelocityTracker.recycle();
+			mVelocityTracker = null;
+		}
+	}
+
 	@Override
 	public Parcelable onSaveInstanceState() {
 		Parcelable superState = super.onSaveInstanceState();
@@ -138,4 +640,111 @@ class UndoBarView extends MaxWidthRelativeLayout {
 			}
 		};
 	}
+
+	/**
+	 * Casts the elevation shadow from the surface of the background rather than the bounds of the view.
+	 */
+	@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+	private static final class SurfaceOutlineProvider extends ViewOutlineProvider {
+
+		private static SurfaceOutlineProvider sInstance;
+
+		private final Rect mPadding = new Rect();
+
+		static void install(View view) {
+			if (sInstance == null) {
+				sInstance = new SurfaceOutlineProvider();
+			}
+			view.setOutlineProvider(sInstance);
+		}
+
+		@Override
+		public void getOutline(View view, Outline outline) {
+			Drawable background = view.getBackground();
+			if (background == null) {
+				return;
+			}
+
+			background.getOutline(outline);
+			if (outline.isEmpty()) {
+				// e.g. an inset or 9-patch background, whose surface is inset by its padding
+				background.getPadding(mPadding);
+				outline.setRect(mPadding.left, mPadding.top, view.getWidth() - mPadding.right, view.getHeight() - mPadding.bottom);
+			}
+		}
+	}
+
+	/**
+	 * Runs the settle animation of a swipe, reusing its listener for every gesture.
+	 */
+	@TargetApi(Build.VERSION_CODES.HONEYCOMB_MR1)
+	private static final class SwipeSettler extends AnimatorListenerAdapter {
+
+		private final UndoBarView mView;
+		private boolean mDismiss;
+		private boolean mCanceled;
+
+		SwipeSettler(UndoBarView view) {
+			mView = view;
+		}
+
+		void settle(boolean dismiss, float translationX) {
+			mDismiss = dismiss;
+			mView.animate().translationX(translationX)//
+					.alpha(dismiss ? 0 : 1)//
+					.setDuration(SWIPE_SETTLE_DURATION)//
+					.setListener(this);
+		}
+
+		@Override
+		public void onAnimationStart(Animator animation) {
+			mCanceled = false;
+		}
+
+		@Override
+		public void onAnimationCancel(Animator animation) {
+			// e.g. shown again in the meantime
+			mCanceled = true;
+		}
+
+		@Override
+		public void onAnimationEnd(Animator animation) {
+			mView.setLayerType(LAYER_TYPE_NONE, null);
+			if (mDismiss || mCanceled) {
+				mView.setTranslationX(0);
+			}
+			if (mDismiss && !mCanceled) {
+				mView.onSwiped();
+			}
+		}
+	}
+
+	/**
+	 * The customizations of an undo bar on top of its theme.<br>
+	 * Unset values keep the styling of the theme.
+	 */
+	static final class Appearance {
+
+		Typeface mTypeface;
+		boolean mHasBackgroundColor;
+		int mBackgroundColor;
+		int mTextSize = UndoBar.TEXT_SIZE_NOTSET;
+		CharSequence mButtonLabel;
+		int mButtonLabelResId = R.string.undo;
+		boolean mHasUndoColor;
+		int mUndoColor;
+		Drawable mButtonDrawable;
+
+		void set(Appearance other) {
+			mTypeface = other.mTypeface;
+			mHasBackgroundColor = other.mHasBackgroundColor;
+			mBackgroundColor = other.mBackgroundColor;
+			mTextSize = other.mTextSize;
+			mButtonLabel = other.mButtonLabel;
+			mButtonLabelResId = other.mButtonLabelResId;
+			mHasUndoColor = other.mHasUndoColor;
+			mUndoColor = other.mUndoColor;
+			mButtonDrawable = other.mButtonDrawable;
+		}
+	}
 }
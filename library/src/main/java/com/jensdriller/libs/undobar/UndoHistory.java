@@ -0,0 +1,178 @@
+package com.jensdriller.libs.undobar;
+
+import android.os.Parcelable;
+
+/**
+ * A bounded history of undoable actions, stored in a fixed-size ring buffer.
+ * <p/>
+ * While a history is set (see {@link UndoBar#setHistory(UndoHistory)}), undo bars no longer commit their
+ * action when they disappear. Instead, the action stays undoable via {@link UndoBar#undo(int)} until it
+ * is evicted, oldest first, because the history ran out of entries or bytes, or until
+ * {@link UndoBar#commitHistory()} is called. Evicted actions are committed through
+ * {@link UndoBar.Listener#onHide()}.
+ * <p/>
+ * A history may be shared by several undo bars. Releasing one of them only commits its own actions.
+ * <p/>
+ * Memory stays flat no matter how many actions are taken.
+ */
+@SuppressWarnings({"UnusedDeclaration", "WeakerAccess"})
+public class UndoHistory {
+
+    /**
+     * Default number of actions kept in the history.
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 10;
+
+    private final Object[] mOwners;
+    private final Parcelable[] mTokens;
+    private final UndoBar.TokenProvider[] mTokenProviders;
+    private final UndoBar.Recipient[] mRecipients;
+    private final long[] mShownAt;
+    private final int[] mSizes;
+    private final int mMaxBytes;
+
+    private int mHead;
+    private int mSize;
+    private int mBytes;
+
+    /**
+     * Creates a history keeping at most {@link #DEFAULT_MAX_ENTRIES} actions.
+     */
+    public UndoHistory() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * Creates a history keeping at most {@code maxEntries} actions.
+     */
+    public UndoHistory(int maxEntries) {
+        this(maxEntries, 0);
+    }
+
+    /**
+     * Creates a history keeping at most {@code maxEntries} actions
+     * whose tokens take at most {@code maxBytes} bytes when parceled.
+     *
+     * @param maxBytes the byte cap, {@code 0} for none
+     */
+    public UndoHistory(int maxEntries, int maxBytes) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries must be at least 1");
+        }
+        mOwners = new Object[maxEntries];
+        mTokens = new Parcelable[maxEntries];
+        mTokenProviders = new UndoBar.TokenProvider[maxEntries];
+        mRecipients = new UndoBar.Recipient[maxEntries];
+        mShownAt = new long[maxEntries];
+        mSizes = new int[maxEntries];
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * @return the number of actions which can currently be undone
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * @return the parcel size of the given token if the history has a byte cap, {@code 0} otherwise
+     */
+    int measure(Parcelable token) {
+        if (mMaxBytes <= 0 || token == null) {
+            return 0;
+        }
+        try {
+            return Parcels.marshall(token).length;
+        } catch (RuntimeException e) {
+            return 0; // tokens holding active objects cannot be measured
+        }
+    }
+
+    /**
+     * Checks whether the oldest action has to be evicted to make room for one of the given size.
+     */
+    boolean isFull(int size) {
+        return mSize == mTokens.length || (mMaxBytes > 0 && mSize > 0 && mBytes + size > mMaxBytes);
+    }
+
+    /**
+     * Adds an action as the newest one.
+     *
+     * @param owner     the undo bar which took the action
+     * @param recipient its listeners and how to notify them, which undo and commit use whichever undo bar triggers them
+     */
+    void push(Object owner, Parcelable token, UndoBar.TokenProvider tokenProvider, UndoBar.Recipient recipient, long shownAt, int size) {
+        int index = getIndex(mSize);
+        mOwners[index] = owner;
+        mTokens[index] = token;
+        mTokenProviders[index] = tokenProvider;
+        mRecipients[index] = recipient;
+        mShownAt[index] = shownAt;
+        mSizes[index] = size;
+        mBytes += size;
+        mSize++;
+    }
+
+    // positions count from the oldest action (0) to the newest one (size() - 1)
+
+    Object getOwner(int position) {
+        return mOwners[getIndex(position)];
+    }
+
+    Parcelable getToken(int position) {
+        return mTokens[getIndex(position)];
+    }
+
+    UndoBar.TokenProvider getTokenProvider(int position) {
+        return mTokenProviders[getIndex(position)];
+    }
+
+    UndoBar.Recipient getRecipient(int position) {
+        return mRecipients[getIndex(position)];
+    }
+
+    long getShownAt(int position) {
+        return mShownAt[getIndex(position)];
+    }
+
+    /**
+     * Removes the action at the given position, moving newer actions down.
+     */
+    void remove(int position) {
+        mBytes -= mSizes[getIndex(position)];
+        if (position == 0) {
+            clear(mHead);
+            mHead = getIndex(1);
+            mSize--;
+            return;
+        }
+        for (int i = position; i < mSize - 1; i++) {
+            move(getIndex(i + 1), getIndex(i));
+        }
+        clear(getIndex(mSize - 1));
+        mSize--;
+    }
+
+    private int getIndex(int position) {
+        return (mHead + position) % mTokens.length;
+    }
+
+    private void move(int from, int to) {
+        mOwners[to] = mOwners[from];
+        mTokens[to] = mTokens[from];
+        mTokenProviders[to] = mTokenProviders[from];
+        mRecipients[to] = mRecipients[from];
+        mShownAt[to] = mShownAt[from];
+        mSizes[to] = mSizes[from];
+    }
+
+    private void clear(int index) {
+        mOwners[index] = null;
+        mTokens[index] = null;
+        mTokenProviders[index] = null;
+        mRecipients[index] = null;
+        mShownAt[index] = 0;
+        mSizes[index] = 0;
+    }
+}
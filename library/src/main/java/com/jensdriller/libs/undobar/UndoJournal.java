@@ -0,0 +1,417 @@
+package com.jensdriller.libs.undobar;
+
+import android.content.Context;
+import android.os.Parcelable;
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * An on-disk journal of pending undo bars which survives process death.
+ * <p/>
+ * Every undo bar that uses the journal (see {@link UndoBar#setJournal(UndoJournal)}) records its token,
+ * message, style and hide deadline when shown and removes the record again when it is hidden or undone.
+ * Records are appended to a compact binary file on a background thread.
+ * <p/>
+ * On relaunch, call {@link #restore(ClassLoader)} <b>before</b> showing any undo bar, e.g.:
+ * <pre>
+ * for (UndoJournal.Entry entry : journal.restore(getClassLoader())) {
+ *     if (entry.isExpired()) {
+ *         commit(entry.getToken());
+ *     } else {
+ *         new UndoBar.Builder(this)//
+ *           .setJournal(journal)//
+ *           .setUndoToken(entry.getToken())//
+ *           .setMessage(entry.getMessage())//
+ *           .setStyle(entry.getStyle())//
+ *           .setDuration(entry.getRemainingDuration())//
+ *           .setListener(this)//
+ *           .show();
+ *     }
+ * }
+ * </pre>
+ */
+@SuppressWarnings({"UnusedDeclaration", "WeakerAccess"})
+public class UndoJournal {
+
+    private static final String TAG = UndoJournal.class.getSimpleName();
+
+    /**
+     * Default file name of the journal inside {@link Context#getFilesDir()}.
+     */
+    public static final String DEFAULT_FILE_NAME = "undobar.journal";
+
+    private static final byte RECORD_ADD = 1;
+    private static final byte RECORD_REMOVE = 2;
+
+    private final JournalFile mJournalFile;
+    private final Executor mExecutor = IoExecutor.get();
+
+    /**
+     * Creates a journal stored as {@link #DEFAULT_FILE_NAME} in the app's private files directory.
+     */
+    public UndoJournal(Context context) {
+        this(new File(context.getFilesDir(), DEFAULT_FILE_NAME));
+    }
+
+    /**
+     * Creates a journal stored in the given {@link File}.<br>
+     * Journals of the same file share their records, so they may be created per screen.
+     */
+    public UndoJournal(File file) {
+        mJournalFile = JournalFile.obtain(file);
+    }
+
+    /**
+     * Reads all pending entries left over from a previous process and clears the journal.<br>
+     * Entries which should stay pending have to be shown again with this journal.
+     */
+    public List<Entry> restore(ClassLoader classLoader) {
+        final File journal = mJournalFile.mFile;
+        Map<Long, Entry> entries = new LinkedHashMap<Long, Entry>();
+        if (journal.exists()) {
+            RandomAccessFile file = null;
+            try {
+                // the journal only holds pending undo bars, so it is small enough to be read at once
+                file = new RandomAccessFile(journal, "r");
+                byte[] bytes = new byte[(int) Math.min(file.length(), Integer.MAX_VALUE)];
+                file.readFully(bytes);
+                readRecords(new DataInputStream(new ByteArrayInputStream(bytes)), entries, classLoader);
+            } catch (IOException e) {
+                Log.w(TAG, "Could not read undo journal", e);
+            } finally {
+                closeQuietly(file);
+                // never read a broken journal twice, or every launch would fail the same way
+                //noinspection ResultOfMethodCallIgnored
+                journal.delete();
+            }
+        }
+        // undo bars of this process which are pending already must not be lost along with the old records
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mJournalFile.compact();
+            }
+        });
+        return new ArrayList<Entry>(entries.values());
+    }
+
+    /**
+     * Reads records until the end of the journal or the first record which is cut off or corrupt.
+     * Records whose token cannot be re-created anymore, e.g. because its class changed with an app update, are skipped.
+     *
+     * @param in a stream over the whole journal, so {@link DataInputStream#available()} is exact
+     */
+    private static void readRecords(DataInputStream in, Map<Long, Entry> entries, ClassLoader classLoader) throws IOException {
+        try {
+            while (true) {
+                byte type = in.readByte();
+                long id = in.readLong();
+                if (type == RECORD_REMOVE) {
+                    entries.remove(id);
+                    continue;
+                }
+                if (type != RECORD_ADD) {
+                    Log.w(TAG, "Undo journal is corrupt, dropping its remaining records");
+                    return;
+                }
+
+                long deadline = in.readLong();
+                int styleOrdinal = in.readByte();
+                String message = in.readUTF();
+                int tokenLength = in.readInt();
+                if (tokenLength < 0 || tokenLength > in.available()) {
+                    Log.w(TAG, "Undo journal is corrupt, dropping its remaining records");
+                    return;
+                }
+                byte[] token = new byte[tokenLength];
+                in.readFully(token);
+
+                UndoBar.Style[] styles = UndoBar.Style.values();
+                UndoBar.Style style = styleOrdinal >= 0 && styleOrdinal < styles.length ? styles[styleOrdinal] : UndoBar.Style.DEFAULT;
+                Parcelable parcelable;
+                try {
+                    parcelable = token.length > 0 ? Parcels.unmarshall(token, classLoader) : null;
+                } catch (RuntimeException e) {
+                    Log.w(TAG, "Could not restore undo token, skipping it", e);
+                    continue;
+                }
+                entries.put(id, new Entry(parcelable, message, style, deadline));
+            }
+        } catch (EOFException e) {
+            // end of journal, or a record cut off by process death
+        }
+    }
+
+    /**
+     * Records a pending undo bar.<br>
+     * The token is only read, and marshalled, on the I/O thread, so the calling thread never touches the disk.
+     *
+     * @param token the token, or {@code null} if there is none
+     * @return the id of the record
+     */
+    long append(final TokenHandle token, CharSequence message, UndoBar.Style style, long deadline) {
+        final long id = mJournalFile.nextId();
+        final long finalDeadline = deadline;
+        final byte styleOrdinal = (byte) style.ordinal();
+        final String finalMessage = message != null ? message.toString() : "";
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (!mJournalFile.isPending(id)) {
+                    return; // removed in the meantime
+                }
+
+                final byte[] tokenBytes;
+                try {
+                    Parcelable parcelable = token != null ? token.get() : null;
+                    tokenBytes = parcelable != null ? Parcels.marshall(parcelable) : new byte[0];
+                } catch (RuntimeException e) {
+                    Log.w(TAG, "Undo token cannot be persisted", e);
+                    return;
+                }
+
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream(tokenBytes.length + finalMessage.length() + 32);
+                DataOutputStream out = new DataOutputStream(bytes);
+                try {
+                    out.writeByte(RECORD_ADD);
+                    out.writeLong(id);
+                    out.writeLong(finalDeadline);
+                    out.writeByte(styleOrdinal);
+                    out.writeUTF(finalMessage);
+                    out.writeInt(tokenBytes.length);
+                    out.write(tokenBytes);
+                } catch (IOException e) {
+                    Log.w(TAG, "Undo message cannot be persisted", e); // longer than 64K
+                    return;
+                }
+                mJournalFile.add(id, bytes.toByteArray());
+            }
+        });
+        return id;
+    }
+
+    /**
+     * Removes the record with the given id.<br>
+     * The journal file is deleted as soon as nothing is pending anymore in any journal of the same file.
+     */
+    void remove(final long id) {
+        mJournalFile.release(id);
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mJournalFile.remove(id);
+            }
+        });
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * The records of one journal file, shared by all {@link UndoJournal}s of that file.<br>
+     * Ids are handed out and released on any thread, while the file is only written on the I/O thread.
+     */
+    private static final class JournalFile {
+
+        private static final Map<String, JournalFile> sFiles = new HashMap<String, JournalFile>();
+
+        final File mFile;
+
+        // guarded by this
+        private final LongHashSet mPendingIds = new LongHashSet();
+        private long mNextId = System.currentTimeMillis();
+
+        // I/O thread only
+        private final Map<Long, byte[]> mRecords = new LinkedHashMap<Long, byte[]>();
+        private int mRemoveRecords;
+
+        private JournalFile(File file) {
+            mFile = file;
+        }
+
+        static synchronized JournalFile obtain(File file) {
+            String path;
+            try {
+                path = file.getCanonicalPath();
+            } catch (IOException e) {
+                path = file.getAbsolutePath();
+            }
+            JournalFile journalFile = sFiles.get(path);
+            if (journalFile == null) {
+                journalFile = new JournalFile(file);
+                sFiles.put(path, journalFile);
+            }
+            return journalFile;
+        }
+
+        synchronized long nextId() {
+            long id = ++mNextId;
+            mPendingIds.add(id);
+            return id;
+        }
+
+        synchronized boolean isPending(long id) {
+            return mPendingIds.contains(id);
+        }
+
+        synchronized void release(long id) {
+            mPendingIds.remove(id);
+        }
+
+        /**
+         * Appends the given add record, unless its id has been released in the meantime.
+         */
+        void add(long id, byte[] record) {
+            if (!isPending(id)) {
+                return;
+            }
+            mRecords.put(id, record);
+            append(record);
+        }
+
+        /**
+         * Appends a remove record for the given id, or deletes the whole file once no record is left.<br>
+         * The file is compacted as soon as it holds more removed records than pending ones.
+         */
+        void remove(long id) {
+            if (mRecords.remove(id) == null) {
+                return; // its add record has never been written
+            }
+            if (mRecords.isEmpty()) {
+                mRemoveRecords = 0;
+                //noinspection ResultOfMethodCallIgnored
+                mFile.delete();
+                return;
+            }
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(9);
+            DataOutputStream out = new DataOutputStream(bytes);
+            try {
+                out.writeByte(RECORD_REMOVE);
+                out.writeLong(id);
+            } catch (IOException e) {
+                throw new AssertionError(e); // cannot happen in memory
+            }
+            append(bytes.toByteArray());
+            if (++mRemoveRecords > mRecords.size()) {
+                compact();
+            }
+        }
+
+        /**
+         * Rewrites the file with the pending records only, replacing it atomically.
+         */
+        void compact() {
+            mRemoveRecords = 0;
+            if (mRecords.isEmpty()) {
+                return;
+            }
+
+            File compacted = new File(mFile.getPath() + ".tmp");
+            OutputStream out = null;
+            try {
+                out = new BufferedOutputStream(new FileOutputStream(compacted));
+                for (byte[] record : mRecords.values()) {
+                    out.write(record);
+                }
+                out.close();
+                out = null;
+                if (!compacted.renameTo(mFile)) {
+                    Log.w(TAG, "Could not replace undo journal with its compacted version");
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "Could not compact undo journal", e);
+            } finally {
+                closeQuietly(out);
+            }
+        }
+
+        private void append(byte[] record) {
+            OutputStream out = null;
+            try {
+                out = new FileOutputStream(mFile, true);
+                out.write(record);
+            } catch (IOException e) {
+                Log.w(TAG, "Could not write undo journal", e);
+            } finally {
+                closeQuietly(out);
+            }
+        }
+    }
+
+    /**
+     * A pending undo bar restored from the journal.
+     */
+    public static final class Entry {
+
+        private final Parcelable mToken;
+        private final String mMessage;
+        private final UndoBar.Style mStyle;
+        private final long mDeadline;
+
+        Entry(Parcelable token, String message, UndoBar.Style style, long deadline) {
+            mToken = token;
+            mMessage = message;
+            mStyle = style;
+            mDeadline = deadline;
+        }
+
+        public Parcelable getToken() {
+            return mToken;
+        }
+
+        public String getMessage() {
+            return mMessage;
+        }
+
+        public UndoBar.Style getStyle() {
+            return mStyle;
+        }
+
+        /**
+         * @return the wall clock time in milliseconds at which the undo bar would have been hidden
+         */
+        public long getDeadline() {
+            return mDeadline;
+        }
+
+        /**
+         * @return the remaining duration in milliseconds, {@code 0} if expired
+         */
+        public int getRemainingDuration() {
+            return (int) Math.max(0, mDeadline - System.currentTimeMillis());
+        }
+
+        /**
+         * @return {@code true} if the undo bar would have been hidden already,
+         * meaning the action should be committed
+         */
+        public boolean isExpired() {
+            return getRemainingDuration() == 0;
+        }
+    }
+}
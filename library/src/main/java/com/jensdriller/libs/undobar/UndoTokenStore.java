@@ -0,0 +1,262 @@
+package com.jensdriller.libs.undobar;
+
+import android.content.Context;
+import android.os.Parcelable;
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Holds the undo tokens of pending undo bars within a memory budget.
+ * <p/>
+ * Tokens are kept in memory as long as their combined parcel size fits into the budget.
+ * Larger tokens are written to an app-private file and only read back,
+ * using memory-mapped I/O, if the undo button is actually pressed.
+ * Since most undo bars hide without being actioned, spilled tokens are rarely read at all.
+ * <p/>
+ * Storing a token never marshals it on the calling thread. It is measured, and spilled if needed,
+ * on a background thread, so tokens must not be modified once they have been handed to an undo bar.
+ * <p/>
+ * Stores may be created per screen or once per process, e.g. held by your {@link android.app.Application}.
+ *
+ * @see UndoBar#setTokenStore(UndoTokenStore)
+ */
+@SuppressWarnings({"UnusedDeclaration", "WeakerAccess"})
+public class UndoTokenStore {
+
+    private static final String TAG = UndoTokenStore.class.getSimpleName();
+
+    /**
+     * Default in-memory budget in bytes.
+     */
+    public static final int DEFAULT_MEMORY_BUDGET = 64 * 1024;
+
+    private static final String DIRECTORY_NAME = "undobar-tokens";
+
+    // ids are unique per process, so stores sharing the directory never overwrite each other's files
+    private static long sNextId;
+    private static boolean sDirectoryCleared;
+
+    private final File mDirectory;
+    private final int mMemoryBudget;
+    private final Executor mExecutor = IoExecutor.get();
+
+    private final Map<Long, Parcelable> mInMemoryTokens = new HashMap<Long, Parcelable>();
+    private final Map<Long, Integer> mInMemorySizes = new HashMap<Long, Integer>();
+    private final Map<Long, byte[]> mPendingWrites = new HashMap<Long, byte[]>();
+    private int mInMemoryBytes;
+
+    /**
+     * Creates a store with the {@link #DEFAULT_MEMORY_BUDGET}.
+     */
+    public UndoTokenStore(Context context) {
+        this(context, DEFAULT_MEMORY_BUDGET);
+    }
+
+    /**
+     * Creates a store keeping at most {@code memoryBudget} bytes of tokens in memory.
+     */
+    public UndoTokenStore(Context context, int memoryBudget) {
+        mDirectory = new File(context.getCacheDir(), DIRECTORY_NAME);
+        mMemoryBudget = memoryBudget;
+
+        if (claimDirectory()) {
+            // spilled tokens of a previous process can never be claimed again,
+            // and the I/O thread clears them before any token of this process is spilled
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    File[] files = mDirectory.listFiles();
+                    if (files != null) {
+                        for (File file : files) {
+                            //noinspection ResultOfMethodCallIgnored
+                            file.delete();
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Stores the given token.<br>
+     * It is kept in memory right away and measured on the I/O thread, which spills it if it exceeds the budget.
+     *
+     * @return the id to claim the token with
+     */
+    synchronized long put(final Parcelable token) {
+        final long id = nextId();
+        mInMemoryTokens.put(id, token);
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                measure(id, token);
+            }
+        });
+        return id;
+    }
+
+    private static synchronized long nextId() {
+        return ++sNextId;
+    }
+
+    /**
+     * @return {@code true} for the first store of this process, which clears the directory
+     */
+    private static synchronized boolean claimDirectory() {
+        if (sDirectoryCleared) {
+            return false;
+        }
+        sDirectoryCleared = true;
+        return true;
+    }
+
+    /**
+     * Accounts the given token against the budget, or spills it if it does not fit anymore.<br>
+     * Runs on the I/O thread.
+     */
+    private void measure(long id, Parcelable token) {
+        synchronized (this) {
+            if (!mInMemoryTokens.containsKey(id)) {
+                return; // removed in the meantime
+            }
+        }
+
+        final byte[] bytes;
+        try {
+            bytes = Parcels.marshall(token);
+        } catch (RuntimeException e) {
+            return; // tokens holding active objects cannot be spilled, so keep them regardless of the budget
+        }
+
+        synchronized (this) {
+            if (!mInMemoryTokens.containsKey(id)) {
+                return;
+            }
+            if (mInMemoryBytes + bytes.length <= mMemoryBudget) {
+                mInMemorySizes.put(id, bytes.length);
+                mInMemoryBytes += bytes.length;
+                return;
+            }
+            // readable from memory until it has been written
+            mInMemoryTokens.remove(id);
+            mPendingWrites.put(id, bytes);
+        }
+        write(getFile(id), bytes);
+        synchronized (this) {
+            mPendingWrites.remove(id);
+        }
+    }
+
+    /**
+     * Materializes the token with the given id.
+     *
+     * @return the token, or {@code null} if it is unknown or could not be read back
+     */
+    synchronized Parcelable get(long id, ClassLoader classLoader) {
+        if (mInMemoryTokens.containsKey(id)) {
+            return mInMemoryTokens.get(id);
+        }
+
+        byte[] bytes = mPendingWrites.get(id);
+        if (bytes == null) {
+            bytes = read(getFile(id));
+        }
+        return bytes != null ? Parcels.unmarshall(bytes, classLoader) : null;
+    }
+
+    /**
+     * Hands the token with the given id over to whoever needs it once its undo bar has hidden.<br>
+     * A token in memory is claimed right away, while a spilled one is only read back, and its file deleted,
+     * once the returned handle is asked for it, so the calling thread never waits for the disk.
+     * The file of a spilled token which is never asked for is deleted along with the directory by the next process.
+     *
+     * @return the handle, or {@code null} if the token is unknown
+     */
+    synchronized TokenHandle claim(long id, ClassLoader classLoader) {
+        if (mInMemoryTokens.containsKey(id)) {
+            TokenHandle handle = TokenHandle.of(mInMemoryTokens.get(id));
+            remove(id);
+            return handle;
+        }
+        return new TokenHandle(this, id, classLoader);
+    }
+
+    /**
+     * Drops the token with the given id.
+     */
+    synchronized void remove(long id) {
+        if (mInMemoryTokens.containsKey(id)) {
+            mInMemoryTokens.remove(id);
+            Integer size = mInMemorySizes.remove(id);
+            if (size != null) {
+                mInMemoryBytes -= size;
+            }
+            return;
+        }
+
+        mPendingWrites.remove(id);
+        final File file = getFile(id);
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        });
+    }
+
+    private File getFile(long id) {
+        return new File(mDirectory, id + ".token");
+    }
+
+    private void write(File file, byte[] bytes) {
+        //noinspection ResultOfMethodCallIgnored
+        mDirectory.mkdirs();
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(file);
+            out.getChannel().write(ByteBuffer.wrap(bytes));
+        } catch (IOException e) {
+            Log.w(TAG, "Could not spill undo token", e);
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    private static byte[] read(File file) {
+        RandomAccessFile in = null;
+        try {
+            in = new RandomAccessFile(file, "r");
+            FileChannel channel = in.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            return bytes;
+        } catch (IOException e) {
+            Log.w(TAG, "Could not read spilled undo token", e);
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
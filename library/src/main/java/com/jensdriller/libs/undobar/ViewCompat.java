@@ -1,6 +1,7 @@
 package com.jensdriller.libs.undobar;
 
 import android.view.View;
+import android.view.animation.Interpolator;
 
 abstract class ViewCompat {
 
@@ -12,10 +13,22 @@ abstract class ViewCompat {
 
     abstract void setAlpha(float alpha);
 
+    abstract void setTranslationY(float translationY);
+
     abstract void animateIn(long duration);
 
     abstract void animateOut(long duration, AnimatorListener animatorListener);
 
+    abstract void animateTranslationY(float translationY, long duration);
+
+    abstract void setPivotX(float pivotX);
+
+    abstract void setScaleX(float scaleX);
+
+    abstract void animateScaleX(float scaleX, long duration, Interpolator interpolator);
+
+    abstract void cancel();
+
     interface AnimatorListener {
         void onAnimationEnd();
     }
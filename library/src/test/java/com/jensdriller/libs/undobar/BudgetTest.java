@@ -0,0 +1,479 @@
+package com.jensdriller.libs.undobar;
+
+import android.app.Activity;
+import android.content.Context;
+import android.content.res.Resources;
+import android.content.res.XmlResourceParser;
+import android.graphics.drawable.Drawable;
+import android.os.Build;
+import android.os.Bundle;
+import android.util.AttributeSet;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
+import android.widget.FrameLayout;
+import android.widget.TextView;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+import org.robolectric.util.ActivityController;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.Iterator;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the cost of every public undo bar operation against the budgets in {@code undobar-budgets.json}
+ * of the test resources, so an exceeded budget fails the build.
+ * <p/>
+ * For each style, it counts until the operation has settled:
+ * <ul>
+ * <li>the measure and layout passes of the content root and of the {@link UndoBarView}, the only
+ * {@link MaxWidthRelativeLayout}, which is inflated as a counting subclass</li>
+ * <li>the calls to {@link View#invalidate()} on the views of the undo bar</li>
+ * <li>the draw passes</li>
+ * <li>the {@link Resources} lookups</li>
+ * <li>the bytes allocated by the main thread, where the JVM can tell</li>
+ * </ul>
+ * A metric without a budget counts as exceeded, so new metrics are recorded before they are relied on.
+ * The measured maxima are written to {@code undobar-budgets-<variant>.json} in the directory given by the
+ * {@code undobar.budgetsDir} property, so budgets can be re-recorded after an intended change and checked in again.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = Build.VERSION_CODES.LOLLIPOP)
+public class BudgetTest {
+
+    private static final String BUDGETS_FILE_NAME = "undobar-budgets.json";
+    private static final long SETTLE_MILLIS = 500;
+
+    private static final String MEASURE_PASSES = "measure_passes";
+    private static final String LAYOUT_PASSES = "layout_passes";
+    private static final String DRAW_PASSES = "draw_passes";
+    private static final String RESOURCE_LOOKUPS = "resource_lookups";
+    private static final String UNDO_BAR_MEASURE_PASSES = "undo_bar_measure_passes";
+    private static final String UNDO_BAR_LAYOUT_PASSES = "undo_bar_layout_passes";
+    private static final String INVALIDATIONS = "invalidations";
+    private static final String ALLOCATED_BYTES = "allocated_bytes";
+
+    private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+    private static final Method GET_THREAD_ALLOCATED_BYTES = getThreadAllocatedBytesMethod();
+
+    private static final UndoBar.Style[] STYLES = {UndoBar.Style.HOLO, UndoBar.Style.KITKAT, UndoBar.Style.LOLLIPOP};
+
+    private ActivityController<CountingActivity> mController;
+    CountingActivity mActivity;
+    private JSONObject mBudgets;
+    private final JSONObject mMaxima = new JSONObject();
+    private final StringBuilder mViolations = new StringBuilder();
+    private UndoBar mUndoBar;
+
+    // counters of the current operation
+    private int mMeasurePasses;
+    private int mLayoutPasses;
+    private int mDrawPasses;
+
+    @Before
+    public void setUp() throws IOException, JSONException {
+        mBudgets = readBudgets();
+
+        mController = Robolectric.buildActivity(CountingActivity.class).create().start().resume().visible();
+        mActivity = mController.get();
+        mActivity.setContentView(new FrameLayout(mActivity));
+
+        // a sibling of the undo bar in the content root, which is measured and laid out along with it
+        ViewGroup contentRoot = (ViewGroup) mActivity.findViewById(android.R.id.content);
+        contentRoot.addView(new ProbeView(mActivity));
+        contentRoot.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                mDrawPasses++;
+                return true;
+            }
+        });
+        settle();
+    }
+
+    @After
+    public void tearDown() {
+        if (mUndoBar != null) {
+            mUndoBar.release();
+        }
+        mController.pause().stop().destroy();
+    }
+
+    /**
+     * @return the name of the configuration under test, used for the file of the measured maxima
+     */
+    protected String getVariant() {
+        return BuildConfig.FLAVOR;
+    }
+
+    @Test
+    public void operationsStayWithinBudgets() throws IOException, JSONException {
+        for (int i = 0; i < STYLES.length; i++) {
+            final UndoBar.Style style = STYLES[i];
+            final UndoBar.Style nextStyle = STYLES[(i + 1) % STYLES.length];
+
+            check("create", style, new Runnable() {
+                @Override
+                public void run() {
+                    mUndoBar = createUndoBar(style);
+                }
+            });
+            check("show", style, new Runnable() {
+                @Override
+                public void run() {
+                    mUndoBar.show(false);
+                }
+            });
+            check("hide", style, new Runnable() {
+                @Override
+                public void run() {
+                    mUndoBar.hide(false);
+                }
+            });
+
+            mUndoBar.show(false);
+            settle();
+            check("undo", style, new Runnable() {
+                @Override
+                public void run() {
+                    mActivity.getWindow().getDecorView().findViewById(R.id.button).performClick();
+                }
+            });
+
+            check("style_switch", style, new Runnable() {
+                @Override
+                public void run() {
+                    mUndoBar.release();
+                    mUndoBar = createUndoBar(nextStyle);
+                    mUndoBar.show(false);
+                }
+            });
+            mUndoBar.release();
+            mUndoBar = null;
+            settle();
+        }
+
+        publishMaxima();
+        assertTrue("Budgets exceeded:\n" + mViolations, mViolations.length() == 0);
+    }
+
+    private UndoBar createUndoBar(UndoBar.Style style) {
+        return new UndoBar.Builder(mActivity)
+                .setMessage("Item deleted.")
+                .setStyle(style)
+                .setAnimationDuration(0)
+                .create();
+    }
+
+    /**
+     * Runs the given operation until it has settled and compares its cost with the budget of the operation.
+     */
+    private void check(String operation, UndoBar.Style style, Runnable runnable) throws JSONException {
+        mMeasurePasses = 0;
+        mLayoutPasses = 0;
+        mDrawPasses = 0;
+        mActivity.mUndoBarMeasurePasses = 0;
+        mActivity.mUndoBarLayoutPasses = 0;
+        mActivity.mInvalidations = 0;
+        int startResourceLookups = mActivity.mResources.mLookups;
+        long startAllocatedBytes = getAllocatedBytes();
+        runnable.run();
+        settle();
+        long allocatedBytes = getAllocatedBytes();
+
+        JSONObject measured = new JSONObject();
+        measured.put(MEASURE_PASSES, mMeasurePasses);
+        measured.put(LAYOUT_PASSES, mLayoutPasses);
+        measured.put(UNDO_BAR_MEASURE_PASSES, mActivity.mUndoBarMeasurePasses);
+        measured.put(UNDO_BAR_LAYOUT_PASSES, mActivity.mUndoBarLayoutPasses);
+        measured.put(INVALIDATIONS, mActivity.mInvalidations);
+        measured.put(DRAW_PASSES, mDrawPasses);
+        measured.put(RESOURCE_LOOKUPS, mActivity.mResources.mLookups - startResourceLookups);
+        if (startAllocatedBytes >= 0 && allocatedBytes >= 0) {
+            measured.put(ALLOCATED_BYTES, allocatedBytes - startAllocatedBytes);
+        }
+
+        JSONObject budget = mBudgets.optJSONObject(operation);
+        JSONObject maxima = mMaxima.optJSONObject(operation);
+        if (maxima == null) {
+            maxima = new JSONObject();
+            mMaxima.put(operation, maxima);
+        }
+        Iterator<String> metrics = measured.keys();
+        while (metrics.hasNext()) {
+            String metric = metrics.next();
+            long value = measured.getLong(metric);
+            maxima.put(metric, Math.max(value, maxima.optLong(metric)));
+
+            if (budget == null || !budget.has(metric)) {
+                mViolations.append(String.format("%s %s (%s): %s = %d has no budget\n",
+                        getVariant(), operation, style, metric, value));
+            } else if (value > budget.getLong(metric)) {
+                mViolations.append(String.format("%s %s (%s): %s = %d exceeds budget of %d\n",
+                        getVariant(), operation, style, metric, value, budget.getLong(metric)));
+            }
+        }
+    }
+
+    private static void settle() {
+        ShadowLooper.idleMainLooper(SETTLE_MILLIS);
+    }
+
+    /**
+     * @return the bytes allocated by the current thread so far, or {@code -1} if the JVM cannot tell
+     */
+    private static long getAllocatedBytes() {
+        if (GET_THREAD_ALLOCATED_BYTES == null) {
+            return -1;
+        }
+        try {
+            return (Long) GET_THREAD_ALLOCATED_BYTES.invoke(THREAD_MX_BEAN, Thread.currentThread().getId());
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    /**
+     * {@code com.sun.management.ThreadMXBean} is HotSpot specific, so it is looked up reflectively.
+     */
+    private static Method getThreadAllocatedBytesMethod() {
+        try {
+            Method method = THREAD_MX_BEAN.getClass().getMethod("getThreadAllocatedBytes", long.class);
+            method.setAccessible(true);
+            return method;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private JSONObject readBudgets() throws IOException, JSONException {
+        InputStream in = getClass().getClassLoader().getResourceAsStream(BUDGETS_FILE_NAME);
+        assertNotNull(BUDGETS_FILE_NAME + " is missing from the test resources", in);
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            for (int read; (read = in.read(buffer)) != -1; ) {
+                bytes.write(buffer, 0, read);
+            }
+            return new JSONObject(bytes.toString("UTF-8"));
+        } finally {
+            in.close();
+        }
+    }
+
+    private void publishMaxima() throws IOException, JSONException {
+        String maxima = mMaxima.toString(2);
+
+        File directory = new File(System.getProperty("undobar.budgetsDir", "build/budgets"));
+        //noinspection ResultOfMethodCallIgnored
+        directory.mkdirs();
+        Writer out = new OutputStreamWriter(new FileOutputStream(new File(directory, "undobar-budgets-" + getVariant() + ".json")), "UTF-8");
+        try {
+            out.write(maxima);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * An {@link Activity} counting the lookups of the resources the undo bar uses,
+     * which inflates the views of the undo bar as counting subclasses.
+     */
+    public static class CountingActivity extends Activity {
+
+        private CountingResources mResources;
+
+        int mUndoBarMeasurePasses;
+        int mUndoBarLayoutPasses;
+        int mInvalidations;
+
+        @Override
+        protected void onCreate(Bundle savedInstanceState) {
+            super.onCreate(savedInstanceState);
+            // asked for every view inflated for the undo bar, ahead of any other factory
+            LayoutInflater.from(this).setFactory2(this);
+        }
+
+        @Override
+        public View onCreateView(View parent, String name, Context context, AttributeSet attrs) {
+            if (UndoBarView.class.getName().equals(name)) {
+                return new CountingUndoBarView(context, attrs, this);
+            } else if ("TextView".equals(name)) {
+                return new CountingTextView(context, attrs, this);
+            } else if ("View".equals(name)) {
+                return new CountingView(context, attrs, this);
+            }
+            return super.onCreateView(parent, name, context, attrs);
+        }
+
+        @Override
+        public Resources getResources() {
+            if (mResources == null) {
+                mResources = new CountingResources(super.getResources());
+            }
+            return mResources;
+        }
+    }
+
+    /**
+     * An invisible view counting the measure and layout passes of its parent.
+     */
+    private class ProbeView extends View {
+
+        ProbeView(Context context) {
+            super(context);
+            setVisibility(INVISIBLE);
+        }
+
+        @Override
+        protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+            mMeasurePasses++;
+            setMeasuredDimension(0, 0);
+        }
+
+        @Override
+        protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
+            mLayoutPasses++;
+        }
+    }
+
+    private static class CountingUndoBarView extends UndoBarView {
+
+        private final CountingActivity mCounter;
+
+        CountingUndoBarView(Context context, AttributeSet attrs, CountingActivity counter) {
+            super(context, attrs);
+            mCounter = counter;
+        }
+
+        @Override
+        protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+            mCounter.mUndoBarMeasurePasses++;
+            super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+        }
+
+        @Override
+        protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
+            mCounter.mUndoBarLayoutPasses++;
+            super.onLayout(changed, left, top, right, bottom);
+        }
+
+        @Override
+        public void invalidate() {
+            mCounter.mInvalidations++;
+            super.invalidate();
+        }
+    }
+
+    private static class CountingTextView extends TextView {
+
+        private final CountingActivity mCounter;
+
+        CountingTextView(Context context, AttributeSet attrs, CountingActivity counter) {
+            super(context, attrs);
+            mCounter = counter;
+        }
+
+        @Override
+        public void invalidate() {
+            mCounter.mInvalidations++;
+            super.invalidate();
+        }
+    }
+
+    private static class CountingView extends View {
+
+        private final CountingActivity mCounter;
+
+        CountingView(Context context, AttributeSet attrs, CountingActivity counter) {
+            super(context, attrs);
+            mCounter = counter;
+        }
+
+        @Override
+        public void invalidate() {
+            mCounter.mInvalidations++;
+            super.invalidate();
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private static class CountingResources extends Resources {
+
+        int mLookups;
+
+        CountingResources(Resources resources) {
+            super(resources.getAssets(), resources.getDisplayMetrics(), resources.getConfiguration());
+        }
+
+        @Override
+        public CharSequence getText(int id) throws NotFoundException {
+            mLookups++;
+            return super.getText(id);
+        }
+
+        @Override
+        public String getString(int id) throws NotFoundException {
+            mLookups++;
+            return super.getString(id);
+        }
+
+        @Override
+        public float getDimension(int id) throws NotFoundException {
+            mLookups++;
+            return super.getDimension(id);
+        }
+
+        @Override
+        public int getDimensionPixelSize(int id) throws NotFoundException {
+            mLookups++;
+            return super.getDimensionPixelSize(id);
+        }
+
+        @Override
+        public int getColor(int id) throws NotFoundException {
+            mLookups++;
+            return super.getColor(id);
+        }
+
+        @Override
+        public boolean getBoolean(int id) throws NotFoundException {
+            mLookups++;
+            return super.getBoolean(id);
+        }
+
+        @Override
+        public Drawable getDrawable(int id) throws NotFoundException {
+            mLookups++;
+            return super.getDrawable(id);
+        }
+
+        @Override
+        public XmlResourceParser getLayout(int id) throws NotFoundException {
+            mLookups++;
+            return super.getLayout(id);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.jensdriller.libs.undobar;
+
+import android.app.Activity;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Parcelable;
+import android.widget.FrameLayout;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+import org.robolectric.util.ActivityController;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that an undo bar carried over a configuration change still commits its action
+ * if the re-created {@link Activity} never claims it via {@link UndoBar#findRetained(Activity, String)}.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = Build.VERSION_CODES.LOLLIPOP)
+public class ConfigurationRetainerTest {
+
+    private static final int DURATION = 2000;
+    private static final String MESSAGE = "Item deleted.";
+    private static final String TAG = "delete";
+
+    private ActivityController<HostActivity> mController;
+    private CountingListener mListener;
+    private UndoBar mUndoBar;
+
+    @Before
+    public void setUp() {
+        mController = Robolectric.buildActivity(HostActivity.class).create().start().resume().visible();
+        mListener = new CountingListener();
+        mUndoBar = new UndoBar.Builder(mController.get())
+                .setMessage(MESSAGE)
+                .setDuration(DURATION)
+                .setAnimationDuration(0)
+                .setListener(mListener)
+                .setTag(TAG)
+                .create();
+        mUndoBar.show(false);
+        ShadowLooper.runUiThreadTasks();
+    }
+
+    @After
+    public void tearDown() {
+        mUndoBar.release();
+        mController.pause().stop().destroy();
+    }
+
+    @Test
+    public void unclaimedUndoBarCommitsOnceItsTimeRunsOut() {
+        recreate();
+
+        ShadowLooper.idleMainLooper(DURATION);
+
+        assertEquals(1, mListener.mHidden);
+        assertEquals(0, mListener.mUndone);
+    }
+
+    @Test
+    public void unclaimedUndoBarWhoseTimeRanOutWhileRetainedCommitsOnceReattached() {
+        assertTrue(mUndoBar.retain(mController.get()));
+        mController.pause().stop().destroy();
+        ShadowLooper.idleMainLooper(DURATION); // the deadline passes while there is no Activity
+
+        assertEquals(0, mListener.mHidden);
+
+        mController = Robolectric.buildActivity(HostActivity.class).create(new Bundle()).start().resume().visible();
+        ShadowLooper.idleMainLooper(DURATION);
+
+        assertEquals(1, mListener.mHidden);
+        assertEquals(0, mListener.mUndone);
+    }
+
+    /**
+     * Carries the undo bar over to a new instance of the {@link Activity}, just as {@link LifecycleBinder} does
+     * on a configuration change, but without the new one ever calling {@link UndoBar#findRetained(Activity, String)}.
+     */
+    private void recreate() {
+        assertTrue(mUndoBar.retain(mController.get()));
+        mController.pause().stop().destroy();
+        mController = Robolectric.buildActivity(HostActivity.class).create(new Bundle()).start().resume().visible();
+    }
+
+    public static class HostActivity extends Activity {
+
+        @Override
+        protected void onCreate(Bundle savedInstanceState) {
+            super.onCreate(savedInstanceState);
+            setContentView(new FrameLayout(this));
+        }
+    }
+
+    private static class CountingListener implements UndoBar.Listener {
+
+        int mHidden;
+        int mUndone;
+
+        @Override
+        public void onHide() {
+            mHidden++;
+        }
+
+        @Override
+        public void onUndo(Parcelable token) {
+            mUndone++;
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package com.jensdriller.libs.undobar;
+
+import android.app.Activity;
+import android.app.Dialog;
+import android.content.Context;
+import android.os.Build;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+import org.robolectric.util.ActivityController;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that undo bars never keep their host alive once it is destroyed,
+ * and that each undo bar retains no more heap than {@link #RETAINED_BYTES_BUDGET}.
+ * <p/>
+ * Hosts are only created, started and resumed, but never made visible or shown,
+ * as Robolectric itself keeps visible windows and the latest shown dialog reachable.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = Build.VERSION_CODES.LOLLIPOP)
+public class RetainedHeapTest {
+
+    /**
+     * Retained bytes per undo bar beyond which the build fails.<br>
+     * Can be overridden with {@code -Dundobar.retainedBytesBudget=<bytes>}.
+     */
+    private static final long RETAINED_BYTES_BUDGET = Long.getLong("undobar.retainedBytesBudget", 4 * 1024);
+
+    private static final int UNDO_BARS_PER_MEASUREMENT = 200;
+    private static final int MAX_GC_ATTEMPTS = 20;
+    private static final String MESSAGE = "Item deleted.";
+
+    private static final Factory[] FACTORIES = {
+            new Factory("Builder") {
+                @Override
+                UndoBar create(Activity activity, Dialog dialog) {
+                    return new UndoBar.Builder(activity).setMessage(MESSAGE).create();
+                }
+            },
+            new Factory("UndoBar(Activity)") {
+                @Override
+                UndoBar create(Activity activity, Dialog dialog) {
+                    return new UndoBar(activity);
+                }
+            },
+            new Factory("UndoBar(Dialog)") {
+                @Override
+                UndoBar create(Activity activity, Dialog dialog) {
+                    return new UndoBar(dialog);
+                }
+            },
+            new Factory("UndoBar(Context)") {
+                @Override
+                UndoBar create(Activity activity, Dialog dialog) {
+                    return new UndoBar((Context) activity);
+                }
+            }
+    };
+
+    private final List<Host> mHosts = new ArrayList<Host>();
+
+    @After
+    public void tearDown() {
+        for (Host host : mHosts) {
+            host.destroy();
+        }
+        mHosts.clear();
+    }
+
+    @Test
+    public void pendingUndoBarsAreReleasedWithTheirHost() {
+        for (final Factory factory : FACTORIES) {
+            assertReleasedWithHost(factory + ", pending", new Scenario() {
+                @Override
+                public UndoBar run(Host host) {
+                    UndoBar undoBar = factory.create(host.mActivity, host.mDialog);
+                    undoBar.setMessage(MESSAGE);
+                    undoBar.show(false);
+                    return undoBar;
+                }
+            });
+        }
+    }
+
+    @Test
+    public void idleUndoBarsAreReleasedWithTheirHost() {
+        for (final Factory factory : FACTORIES) {
+            assertReleasedWithHost(factory + ", idle", new Scenario() {
+                @Override
+                public UndoBar run(Host host) {
+                    UndoBar undoBar = factory.create(host.mActivity, host.mDialog);
+                    undoBar.setMessage(MESSAGE);
+                    undoBar.show(false);
+                    undoBar.hide(false); // its view is now scheduled to be evicted
+                    return undoBar;
+                }
+            });
+        }
+    }
+
+    @Test
+    public void throwawayUndoBarsAreReleasedWithTheirHost() {
+        assertReleasedWithHost("Builder.show()", new Scenario() {
+            @Override
+            public UndoBar run(Host host) {
+                new UndoBar.Builder(host.mActivity).setMessage(MESSAGE).show(false);
+                return null;
+            }
+        });
+    }
+
+    @Test
+    public void retainedBytesPerUndoBarStayWithinBudget() {
+        StringBuilder violations = new StringBuilder();
+        for (Factory factory : FACTORIES) {
+            long retainedBytes = measureRetainedBytes(factory);
+            String result = String.format("%s: %d retained bytes per undo bar (budget: %d)",
+                    factory, retainedBytes, RETAINED_BYTES_BUDGET);
+            System.out.println(result); // part of the test results of the build
+            if (retainedBytes > RETAINED_BYTES_BUDGET) {
+                violations.append(result).append('\n');
+            }
+        }
+        assertTrue("Retained heap budget exceeded:\n" + violations, violations.length() == 0);
+    }
+
+    /**
+     * @return the heap retained by each of {@link #UNDO_BARS_PER_MEASUREMENT} undo bars sharing a host
+     */
+    private long measureRetainedBytes(Factory factory) {
+        Host host = createHost();
+        // the view and theme are shared by all undo bars of a window, so pay for them up front
+        UndoBar warmUp = factory.create(host.mActivity, host.mDialog);
+        warmUp.setMessage(MESSAGE);
+        warmUp.show(false);
+        warmUp.hide(false);
+
+        List<UndoBar> undoBars = new ArrayList<UndoBar>(UNDO_BARS_PER_MEASUREMENT);
+        long before = usedMemory();
+        for (int i = 0; i < UNDO_BARS_PER_MEASUREMENT; i++) {
+            UndoBar undoBar = factory.create(host.mActivity, host.mDialog);
+            undoBar.setMessage(MESSAGE);
+            undoBars.add(undoBar);
+        }
+        long after = usedMemory();
+
+        for (UndoBar undoBar : undoBars) {
+            undoBar.release();
+        }
+        return Math.max(0, after - before) / UNDO_BARS_PER_MEASUREMENT;
+    }
+
+    private Host createHost() {
+        Host host = new Host();
+        mHosts.add(host);
+        return host;
+    }
+
+    /**
+     * Runs the given scenario in a new host, destroys it and asserts that neither the host
+     * nor the {@link UndoBar} of the scenario is retained afterwards.<br>
+     * Nothing but weak references to them may be kept on the stack of this method.
+     */
+    private static void assertReleasedWithHost(String description, Scenario scenario) {
+        Host host = new Host();
+        WeakReference<Activity> activity = new WeakReference<Activity>(host.mActivity);
+        WeakReference<Dialog> dialog = new WeakReference<Dialog>(host.mDialog);
+        WeakReference<UndoBar> undoBar = new WeakReference<UndoBar>(scenario.run(host));
+
+        host.destroy();
+        //noinspection UnusedAssignment
+        host = null;
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+
+        awaitCollected(activity);
+        assertNull(description + ": Activity is retained", activity.get());
+        assertNull(description + ": Dialog is retained", dialog.get());
+        assertNull(description + ": UndoBar is retained", undoBar.get());
+    }
+
+    private static void awaitCollected(WeakReference<?> reference) {
+        for (int i = 0; i < MAX_GC_ATTEMPTS && reference.get() != null; i++) {
+            forceGc();
+        }
+    }
+
+    private static long usedMemory() {
+        forceGc();
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Runs the garbage collector until an unreachable canary has been collected.
+     */
+    private static void forceGc() {
+        WeakReference<Object> canary = new WeakReference<Object>(new Object());
+        for (int i = 0; i < MAX_GC_ATTEMPTS && canary.get() != null; i++) {
+            System.gc();
+            System.runFinalization();
+        }
+        System.gc();
+    }
+
+    private interface Scenario {
+        /**
+         * @return the {@link UndoBar} which must not be retained once the host is destroyed, if any
+         */
+        UndoBar run(Host host);
+    }
+
+    private abstract static class Factory {
+
+        private final String mName;
+
+        Factory(String name) {
+            mName = name;
+        }
+
+        abstract UndoBar create(Activity activity, Dialog dialog);
+
+        @Override
+        public String toString() {
+            return mName;
+        }
+    }
+
+    /**
+     * An {@link Activity} with a {@link Dialog}, either of which can host undo bars.
+     */
+    private static class Host {
+
+        private ActivityController<Activity> mController;
+        private Activity mActivity;
+        private Dialog mDialog;
+
+        Host() {
+            mController = Robolectric.buildActivity(Activity.class).create().start().resume();
+            mActivity = mController.get();
+            mDialog = new Dialog(mActivity);
+        }
+
+        void destroy() {
+            if (mController == null) {
+                return;
+            }
+            mDialog.dismiss();
+            mController.pause().stop().destroy();
+            mController = null;
+            mActivity = null;
+            mDialog = null;
+        }
+    }
+}
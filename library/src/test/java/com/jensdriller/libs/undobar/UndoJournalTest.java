@@ -0,0 +1,144 @@
+package com.jensdriller.libs.undobar;
+
+import android.os.Build;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that a broken journal never fails {@link UndoJournal#restore(ClassLoader)}, let alone on every launch,
+ * and that journals of the same file never drop each other's records.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = Build.VERSION_CODES.LOLLIPOP)
+public class UndoJournalTest {
+
+    private static final byte RECORD_ADD = 1;
+
+    private File mFile;
+    private UndoJournal mJournal;
+
+    @Before
+    public void setUp() {
+        mFile = new File(RuntimeEnvironment.application.getFilesDir(), UndoJournal.DEFAULT_FILE_NAME);
+        mJournal = new UndoJournal(mFile);
+    }
+
+    @Test
+    public void negativeTokenLengthDropsRemainingRecords() throws IOException {
+        DataOutputStream out = open();
+        writeAdd(out, 1, "first", 0);
+        writeAdd(out, 2, "corrupt", -1);
+        out.close();
+
+        assertRestored("first");
+    }
+
+    @Test
+    public void tokenLengthBeyondEndOfJournalDropsRemainingRecords() throws IOException {
+        DataOutputStream out = open();
+        writeAdd(out, 1, "first", 0);
+        writeAdd(out, 2, "corrupt", Integer.MAX_VALUE);
+        out.close();
+
+        assertRestored("first");
+    }
+
+    @Test
+    public void unknownRecordTypeDropsRemainingRecords() throws IOException {
+        DataOutputStream out = open();
+        writeAdd(out, 1, "first", 0);
+        out.writeByte(42);
+        out.writeLong(2);
+        out.close();
+
+        assertRestored("first");
+    }
+
+    @Test
+    public void journalsOfTheSameFileHandOutDistinctIds() throws InterruptedException {
+        UndoJournal other = new UndoJournal(mFile);
+        long id = mJournal.append(null, "first", UndoBar.Style.DEFAULT, System.currentTimeMillis());
+        long otherId = other.append(null, "second", UndoBar.Style.DEFAULT, System.currentTimeMillis());
+
+        assertNotEquals(id, otherId);
+
+        mJournal.remove(id);
+        other.remove(otherId);
+        awaitIoThread();
+    }
+
+    @Test
+    public void removingTheLastRecordOfOneJournalKeepsThoseOfAnother() throws InterruptedException {
+        UndoJournal other = new UndoJournal(mFile);
+        long id = mJournal.append(null, "first", UndoBar.Style.DEFAULT, System.currentTimeMillis());
+        long otherId = other.append(null, "second", UndoBar.Style.DEFAULT, System.currentTimeMillis());
+        awaitIoThread();
+
+        mJournal.remove(id);
+        awaitIoThread();
+
+        List<UndoJournal.Entry> entries = new UndoJournal(mFile).restore(getClass().getClassLoader());
+        assertEquals(1, entries.size());
+        assertEquals("second", entries.get(0).getMessage());
+
+        other.remove(otherId);
+        awaitIoThread();
+        assertFalse("Journal without pending records is not deleted", mFile.exists());
+    }
+
+    /**
+     * Waits until the I/O thread has written everything queued so far.
+     */
+    private static void awaitIoThread() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        IoExecutor.get().execute(new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        });
+        assertTrue("I/O thread is stuck", latch.await(5, TimeUnit.SECONDS));
+    }
+
+    private void assertRestored(String message) {
+        List<UndoJournal.Entry> entries = mJournal.restore(getClass().getClassLoader());
+
+        assertEquals(1, entries.size());
+        assertEquals(message, entries.get(0).getMessage());
+        assertFalse("Broken journal is not deleted", mFile.exists());
+    }
+
+    private DataOutputStream open() throws IOException {
+        return new DataOutputStream(new FileOutputStream(mFile));
+    }
+
+    /**
+     * Writes an add record as {@link UndoJournal} does, announcing a token of the given length without writing it.
+     */
+    private static void writeAdd(DataOutputStream out, long id, String message, int tokenLength) throws IOException {
+        out.writeByte(RECORD_ADD);
+        out.writeLong(id);
+        out.writeLong(System.currentTimeMillis());
+        out.writeByte(UndoBar.Style.DEFAULT.ordinal());
+        out.writeUTF(message);
+        out.writeInt(tokenLength);
+    }
+}
@@ -0,0 +1,65 @@
+package com.jensdriller.libs.undobar;
+
+import android.os.Build;
+import android.view.View;
+
+import com.nineoldandroids.view.ViewHelper;
+import com.nineoldandroids.view.animation.AnimatorProxy;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+import org.robolectric.util.ReflectionHelpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the {@link BudgetTest} through the nineoldandroids proxy, which the api8 flavor only uses below API 12.
+ * <p/>
+ * Robolectric emulates API 16 and later only, so the reported platform version is lowered before any undo bar
+ * is created. Robolectric restores it for every test.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = Build.VERSION_CODES.LOLLIPOP)
+public class ProxyBudgetTest extends BudgetTest {
+
+    private static final int ANIMATION_DURATION = 300;
+
+    @Before
+    public void emulateGingerbread() {
+        ReflectionHelpers.setStaticField(Build.VERSION.class, "SDK_INT", Build.VERSION_CODES.GINGERBREAD_MR1);
+        // read by nineoldandroids to decide whether views need the proxy
+        ReflectionHelpers.setStaticField(Build.VERSION.class, "SDK", String.valueOf(Build.VERSION_CODES.GINGERBREAD_MR1));
+    }
+
+    @Override
+    protected String getVariant() {
+        return BuildConfig.FLAVOR + "-proxy";
+    }
+
+    @Test
+    public void fadesThroughTheProxy() {
+        UndoBar undoBar = new UndoBar.Builder(mActivity)
+                .setMessage("Item deleted.")
+                .setAnimationDuration(ANIMATION_DURATION)
+                .create();
+
+        undoBar.show(true);
+        ShadowLooper.idleMainLooper(ANIMATION_DURATION * 2);
+        View undoBarView = mActivity.findViewById(R.id.undoBar);
+
+        assertTrue(undoBarView.getAnimation() instanceof AnimatorProxy);
+        assertEquals(1, ViewHelper.getAlpha(undoBarView), 0);
+
+        undoBar.hide(true);
+        ShadowLooper.idleMainLooper(ANIMATION_DURATION * 2);
+
+        assertEquals(0, ViewHelper.getAlpha(undoBarView), 0);
+        assertEquals(View.GONE, undoBarView.getVisibility());
+        undoBar.release();
+    }
+}
@@ -0,0 +1,437 @@
+package com.jensdriller.libs.sample;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Debug;
+import android.os.Handler;
+import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
+import android.util.TypedValue;
+import android.view.Choreographer;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.widget.FrameLayout;
+import android.widget.ScrollView;
+import android.widget.TextView;
+
+import com.jensdriller.libs.undobar.UndoBar;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Measures the main costs of the undo bar per {@link UndoBar.Style} on the device it runs on:
+ * <ul>
+ * <li>inflating the undo bar layout</li>
+ * <li>{@link UndoBar#show()} until its posted runnable has run, for both the bar and the Toast branch</li>
+ * <li>measuring and laying out the undo bar for different message lengths and max widths</li>
+ * <li>the frames drawn while the undo bar fades in and out (API 16+)</li>
+ * </ul>
+ * Each is reported as mean time and allocations per operation, the fades as mean frame time and janky frames.<br>
+ * The results are written as JSON to {@code files/undobar-benchmark.json} and logged,
+ * so that library versions can be compared on the same device.
+ */
+public class BenchmarkActivity extends AppCompatActivity {
+
+    private static final String TAG = BenchmarkActivity.class.getSimpleName();
+    private static final String RESULT_FILE_NAME = "undobar-benchmark.json";
+
+    private static final int WARM_UP_ITERATIONS = 20;
+    private static final int ITERATIONS = 200;
+    private static final int TOAST_ITERATIONS = 3; // every one of them is really shown
+    private static final int FADE_DURATION = 1000;
+
+    private static final UndoBar.Style[] STYLES = {UndoBar.Style.HOLO, UndoBar.Style.KITKAT, UndoBar.Style.LOLLIPOP};
+    private static final int[] LAYOUTS = {R.layout.undo_bar_holo, R.layout.undo_bar_kitkat, R.layout.undo_bar_lollipop};
+    private static final int[] MESSAGE_LENGTHS = {8, 40, 160};
+    private static final int[] MAX_WIDTHS_DP = {320, 600, 1280};
+
+    private final Handler mHandler = new Handler();
+    private final List<Runnable> mSteps = new ArrayList<Runnable>();
+    private final JSONObject mResults = new JSONObject();
+
+    private FrameLayout mContainer;
+    private TextView mOutput;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+
+        mOutput = new TextView(this);
+        mOutput.setTextSize(TypedValue.COMPLEX_UNIT_SP, 12);
+        mOutput.setText(R.string.benchmark_running);
+        ScrollView scrollView = new ScrollView(this);
+        scrollView.addView(mOutput);
+        mContainer = new FrameLayout(this);
+        mContainer.addView(scrollView);
+        setContentView(mContainer);
+
+        if (savedInstanceState == null) {
+            scheduleSteps();
+            mHandler.post(mNextStep);
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        mHandler.removeCallbacksAndMessages(null);
+        mSteps.clear();
+        super.onDestroy();
+    }
+
+    /**
+     * Runs the steps one after another, each in its own message, so the looper stays responsive in between.
+     */
+    private final Runnable mNextStep = new Runnable() {
+        @Override
+        public void run() {
+            if (!mSteps.isEmpty()) {
+                mSteps.remove(0).run();
+            }
+        }
+    };
+
+    private void next() {
+        mHandler.post(mNextStep);
+    }
+
+    private void scheduleSteps() {
+        try {
+            mResults.put("version", BuildConfig.VERSION_NAME);
+            mResults.put("device", Build.MANUFACTURER + " " + Build.MODEL);
+            mResults.put("sdk", Build.VERSION.SDK_INT);
+            mResults.put("iterations", ITERATIONS);
+            mResults.put("inflate", new JSONObject());
+            mResults.put("show", new JSONObject());
+            mResults.put("measure", new JSONArray());
+            mResults.put("fade", new JSONObject());
+        } catch (JSONException e) {
+            throw new IllegalStateException(e);
+        }
+
+        for (int i = 0; i < STYLES.length; i++) {
+            final int index = i;
+            mSteps.add(new Runnable() {
+                @Override
+                public void run() {
+                    benchmarkInflate(STYLES[index], LAYOUTS[index]);
+                    next();
+                }
+            });
+            mSteps.add(new Runnable() {
+                @Override
+                public void run() {
+                    benchmarkMeasure(STYLES[index], LAYOUTS[index]);
+                    next();
+                }
+            });
+            mSteps.add(new Runnable() {
+                @Override
+                public void run() {
+                    benchmarkShow(STYLES[index], true, WARM_UP_ITERATIONS + ITERATIONS);
+                }
+            });
+            mSteps.add(new Runnable() {
+                @Override
+                public void run() {
+                    benchmarkShow(STYLES[index], false, TOAST_ITERATIONS);
+                }
+            });
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+                mSteps.add(new Runnable() {
+                    @Override
+                    public void run() {
+                        benchmarkFade(STYLES[index]);
+                    }
+                });
+            }
+        }
+        mSteps.add(new Runnable() {
+            @Override
+            public void run() {
+                publishResults();
+            }
+        });
+    }
+
+    private void benchmarkInflate(UndoBar.Style style, int layoutResId) {
+        LayoutInflater inflater = LayoutInflater.from(this);
+        for (int i = 0; i < WARM_UP_ITERATIONS; i++) {
+            inflater.inflate(layoutResId, mContainer, false);
+        }
+
+        Measurement measurement = new Measurement();
+        measurement.start();
+        for (int i = 0; i < ITERATIONS; i++) {
+            inflater.inflate(layoutResId, mContainer, false);
+        }
+        measurement.stop(ITERATIONS);
+        put("inflate", style.name(), measurement.toJson());
+    }
+
+    private void benchmarkMeasure(UndoBar.Style style, int layoutResId) {
+        View undoBarView = LayoutInflater.from(this).inflate(layoutResId, mContainer, false);
+        TextView message = (TextView) undoBarView.findViewById(R.id.message);
+        int heightMeasureSpec = View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED);
+
+        for (int messageLength : MESSAGE_LENGTHS) {
+            char[] text = new char[messageLength];
+            Arrays.fill(text, 'x');
+            for (int i = 0; i < text.length; i += 6) {
+                text[i] = ' ';
+            }
+            message.setText(new String(text));
+
+            for (int maxWidthDp : MAX_WIDTHS_DP) {
+                int maxWidth = (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, maxWidthDp, getResources().getDisplayMetrics());
+                int widthMeasureSpec = View.MeasureSpec.makeMeasureSpec(maxWidth, View.MeasureSpec.AT_MOST);
+
+                for (int i = 0; i < WARM_UP_ITERATIONS; i++) {
+                    measureAndLayout(undoBarView, message, widthMeasureSpec, heightMeasureSpec);
+                }
+                Measurement measurement = new Measurement();
+                measurement.start();
+                for (int i = 0; i < ITERATIONS; i++) {
+                    measureAndLayout(undoBarView, message, widthMeasureSpec, heightMeasureSpec);
+                }
+                measurement.stop(ITERATIONS);
+
+                try {
+                    JSONObject result = measurement.toJson();
+                    result.put("style", style.name());
+                    result.put("message_length", messageLength);
+                    result.put("max_width_dp", maxWidthDp);
+                    mResults.getJSONArray("measure").put(result);
+                } catch (JSONException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+    }
+
+    private static void measureAndLayout(View undoBarView, TextView message, int widthMeasureSpec, int heightMeasureSpec) {
+        message.requestLayout(); // defeats the measure cache, as a new message would
+        undoBarView.measure(widthMeasureSpec, heightMeasureSpec);
+        undoBarView.layout(0, 0, undoBarView.getMeasuredWidth(), undoBarView.getMeasuredHeight());
+    }
+
+    /**
+     * Shows and hides an undo bar repeatedly, timing each {@link UndoBar#show(boolean)}
+     * until its posted runnable has run. Continues with the next step when done.
+     */
+    private void benchmarkShow(final UndoBar.Style style, final boolean buttonVisible, final int iterations) {
+        final UndoBar undoBar = new UndoBar.Builder(this)
+                .setMessage(R.string.toast_message)
+                .setStyle(style)
+                .setButtonVisible(buttonVisible)
+                .create();
+        final int warmUpIterations = buttonVisible ? WARM_UP_ITERATIONS : 0;
+        final Measurement measurement = new Measurement();
+
+        mHandler.post(new Runnable() {
+
+            private int mIteration;
+
+            @Override
+            public void run() {
+                if (mIteration == warmUpIterations) {
+                    measurement.start();
+                } else if (mIteration > warmUpIterations && mIteration < iterations) {
+                    measurement.pause();
+                }
+                undoBar.hide(false);
+
+                if (mIteration == iterations) {
+                    measurement.stop(iterations - warmUpIterations);
+                    undoBar.release();
+                    put("show", style.name() + (buttonVisible ? "" : "_TOAST"), measurement.toJson());
+                    next();
+                    return;
+                }
+
+                mIteration++;
+                measurement.resume();
+                undoBar.show(false);
+                // runs right after the runnable posted by show()
+                mHandler.post(this);
+            }
+        });
+    }
+
+    /**
+     * Records the frames drawn while an undo bar fades in and then out again. Continues with the next step when done.
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private void benchmarkFade(final UndoBar.Style style) {
+        final UndoBar undoBar = new UndoBar.Builder(this)
+                .setMessage(R.string.toast_message)
+                .setStyle(style)
+                .setAnimationDuration(FADE_DURATION)
+                .create();
+        final FrameRecorder frameRecorder = new FrameRecorder();
+
+        frameRecorder.start();
+        undoBar.show(true);
+        mHandler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                undoBar.hide(true);
+                mHandler.postDelayed(new Runnable() {
+                    @Override
+                    public void run() {
+                        frameRecorder.stop();
+                        undoBar.release();
+                        put("fade", style.name(), frameRecorder.toJson());
+                        next();
+                    }
+                }, FADE_DURATION);
+            }
+        }, FADE_DURATION);
+    }
+
+    private void put(String group, String key, JSONObject result) {
+        try {
+            mResults.getJSONObject(group).put(key, result);
+        } catch (JSONException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void publishResults() {
+        String json;
+        try {
+            json = mResults.toString(2);
+        } catch (JSONException e) {
+            throw new IllegalStateException(e);
+        }
+
+        File file = new File(getFilesDir(), RESULT_FILE_NAME);
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(file);
+            out.write(json.getBytes("UTF-8"));
+        } catch (IOException e) {
+            Log.w(TAG, "Could not write " + file, e);
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+
+        Log.i(TAG, mResults.toString());
+        mOutput.setText(json);
+    }
+
+    /**
+     * Accumulates time and allocations of the main thread over several operations.
+     */
+    private static class Measurement {
+
+        private long mStartNanos;
+        private long mStartAllocations;
+        private long mNanos;
+        private long mAllocations;
+        private int mOperations;
+
+        @SuppressWarnings("deprecation")
+        void start() {
+            Debug.startAllocCounting();
+            resume();
+        }
+
+        @SuppressWarnings("deprecation")
+        void resume() {
+            mStartAllocations = Debug.getThreadAllocCount();
+            mStartNanos = System.nanoTime();
+        }
+
+        @SuppressWarnings("deprecation")
+        void pause() {
+            mNanos += System.nanoTime() - mStartNanos;
+            mAllocations += Debug.getThreadAllocCount() - mStartAllocations;
+        }
+
+        @SuppressWarnings("deprecation")
+        void stop(int operations) {
+            pause();
+            Debug.stopAllocCounting();
+            mOperations = operations;
+        }
+
+        JSONObject toJson() {
+            JSONObject result = new JSONObject();
+            try {
+                result.put("mean_ns", mOperations > 0 ? mNanos / mOperations : 0);
+                result.put("allocations_per_op", mOperations > 0 ? (double) mAllocations / mOperations : 0);
+            } catch (JSONException e) {
+                throw new IllegalStateException(e);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Records the intervals between the frames drawn on the main thread.
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static class FrameRecorder implements Choreographer.FrameCallback {
+
+        private static final long FRAME_NANOS = 1000000000L / 60;
+
+        private boolean mRunning;
+        private long mLastFrameNanos;
+        private long mNanos;
+        private int mFrames;
+        private int mJankyFrames;
+
+        void start() {
+            mRunning = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+
+        void stop() {
+            mRunning = false;
+            Choreographer.getInstance().removeFrameCallback(this);
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (mLastFrameNanos != 0) {
+                long interval = frameTimeNanos - mLastFrameNanos;
+                mNanos += interval;
+                mFrames++;
+                if (interval > FRAME_NANOS * 3 / 2) {
+                    mJankyFrames++;
+                }
+            }
+            mLastFrameNanos = frameTimeNanos;
+            if (mRunning) {
+                Choreographer.getInstance().postFrameCallback(this);
+            }
+        }
+
+        JSONObject toJson() {
+            JSONObject result = new JSONObject();
+            try {
+                result.put("mean_frame_ns", mFrames > 0 ? mNanos / mFrames : 0);
+                result.put("frames", mFrames);
+                result.put("janky_frames", mJankyFrames);
+            } catch (JSONException e) {
+                throw new IllegalStateException(e);
+            }
+            return result;
+        }
+    }
+}